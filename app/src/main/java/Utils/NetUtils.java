@@ -8,8 +8,8 @@ import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
+
+import httpUtils.NetWorkStatus;
 
 /**
  * 跟网络相关的工具类
@@ -30,23 +30,7 @@ public class NetUtils
      */
     public static boolean isConnected(Context context)
     {
-
-        ConnectivityManager connectivity = (ConnectivityManager) context
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-
-        if (null != connectivity)
-        {
-
-            NetworkInfo info = connectivity.getActiveNetworkInfo();
-            if (null != info && info.isConnected())
-            {
-                if (info.getState() == NetworkInfo.State.CONNECTED)
-                {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return NetWorkStatus.networkIsAvailable(context);
     }
 
     /**
@@ -54,13 +38,7 @@ public class NetUtils
      */
     public static boolean isWifi(Context context)
     {
-        ConnectivityManager cm = (ConnectivityManager) context
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-
-        if (cm == null)
-            return false;
-        return cm.getActiveNetworkInfo().getType() == ConnectivityManager.TYPE_WIFI;
-
+        return NetWorkStatus.isWifiAvailable(context);
     }
 
     /**
@@ -7,8 +7,10 @@ import java.util.Map;
  */
 public interface AsyncRequest {
 
-    void request(String url, TaskHandler handler);
+    RequestHandle request(String url, TaskHandler handler);
 
-    void request(String url, Map<String, String> params, TaskHandler handler);
+    RequestHandle request(String url, Map<String, String> params, TaskHandler handler);
+
+    RequestHandle request(HttpRequest request, TaskHandler handler);
 
 }
@@ -0,0 +1,174 @@
+package httpUtils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.squareup.okhttp.Callback;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * runs a {@link BatchRequest} on the threads of the OkHttp client, no more than
+ * its max concurrency at a time. every body is parsed where it arrived, the
+ * handler is called once on the main thread when the last item is done. the bodies
+ * are read like those of a {@link HttpCall}, see {@link HttpCall#read}
+ */
+class BatchCall implements RequestHandle {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final BatchRequest mBatch;
+    private final BatchHandler mHandler;
+    private final CachePolicy mCachePolicy;
+    private final RequestDispatcher mDispatcher;
+    private final Object mTag;
+    private final File mCacheDir;
+    private final BatchResult mResult;
+    private long mStart;
+    private int mNext;
+    private int mRunning;
+    private int mDone;
+    private volatile boolean mCanceled;
+
+    BatchCall(BatchRequest batch, BatchHandler handler, CachePolicy cachePolicy,
+              RequestDispatcher dispatcher, Object tag, File cacheDir) {
+        this.mBatch = batch;
+        this.mHandler = handler;
+        this.mCachePolicy = cachePolicy;
+        this.mDispatcher = dispatcher;
+        this.mTag = tag;
+        this.mCacheDir = cacheDir;
+        this.mResult = new BatchResult(batch.size());
+    }
+
+    void start() {
+        mStart = SystemClock.uptimeMillis();
+        if (mBatch.size() == 0) {
+            complete();
+            return;
+        }
+        startMore();
+    }
+
+    /** start items until the concurrency cap is reached */
+    private void startMore() {
+        while (true) {
+            int index;
+            synchronized (this) {
+                if (mCanceled || mRunning >= mBatch.maxConcurrency || mNext >= mBatch.size()) {
+                    return;
+                }
+                index = mNext++;
+                mRunning++;
+            }
+            OkHttpUtil.enqueue(newRequest(mBatch.items.get(index)), new ItemCallback(index));
+        }
+    }
+
+    private Request newRequest(BatchRequest.Item item) {
+        Request.Builder builder = new Request.Builder().url(item.url).tag(this);
+        if (item.json != null) {
+            builder.post(RequestBody.create(HttpAsyncTaskManager.JSON, item.json));
+        } else {
+            mCachePolicy.apply(builder);
+        }
+        return builder.build();
+    }
+
+    private void itemDone() {
+        boolean last;
+        synchronized (this) {
+            mRunning--;
+            last = ++mDone == mBatch.size();
+        }
+        if (last) {
+            complete();
+        } else {
+            startMore();
+        }
+    }
+
+    private void complete() {
+        mResult.elapsedMillis = SystemClock.uptimeMillis() - mStart;
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCanceled) {
+                    mHandler.onComplete(mResult);
+                    mHandler.onFinish();
+                }
+                mDispatcher.unregister(mTag, BatchCall.this);
+            }
+        });
+    }
+
+    @Override
+    public void cancel() {
+        if (mCanceled) {
+            return;
+        }
+        mCanceled = true;
+        OkHttpUtil.cancel(this);
+        mDispatcher.unregister(mTag, this);
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /** the body of a successful item, parsed by its parser on this thread */
+    @SuppressWarnings("unchecked")
+    private Object parse(Response response, TaskHandler parser) throws IOException {
+        Object read = HttpCall.read(response.body(), parser, mBatch.maxMemoryBytes, mCacheDir);
+        if (read instanceof HttpCall.ParsedResult) {
+            return ((HttpCall.ParsedResult) read).value;
+        }
+        if (parser == null) {
+            return read;
+        }
+        long start = System.nanoTime();
+        Object value = read instanceof byte[] ? ((TaskByteHandler) parser).parseResult((byte[]) read)
+                : parser.parseResult((String) read);
+        ParseStats.get().recordWorker(System.nanoTime() - start);
+        return value;
+    }
+
+    private class ItemCallback implements Callback {
+
+        private final int mIndex;
+
+        ItemCallback(int index) {
+            this.mIndex = index;
+        }
+
+        @Override
+        public void onFailure(Request request, IOException e) {
+            mResult.outcomes[mIndex].error = e;
+            itemDone();
+        }
+
+        @Override
+        public void onResponse(Response response) {
+            BatchResult.Outcome outcome = mResult.outcomes[mIndex];
+            outcome.code = response.code();
+            try {
+                if (response.isSuccessful()) {
+                    outcome.result = parse(response, mBatch.items.get(mIndex).parser);
+                }
+            } catch (Exception e) {
+                // a body cut off or a parser that failed, the item fails, not the batch.
+                // the handler gets it in the outcome
+                outcome.error = e;
+            } finally {
+                IOUtils.closeStream(response.body());
+                itemDone();
+            }
+        }
+    }
+}
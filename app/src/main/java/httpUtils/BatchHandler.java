@@ -0,0 +1,22 @@
+package httpUtils;
+
+/**
+ * the result of {@link HttpAsyncTaskManager#requestBatch}, called on the main thread
+ * once for the whole batch
+ */
+public abstract class BatchHandler {
+
+    /** finish */
+    public void onFinish() {
+    }
+
+    /** network is break */
+    public void onNetError() {
+    }
+
+    /**
+     * every item has its outcome, successful or not
+     * @param result
+     */
+    public abstract void onComplete(BatchResult result);
+}
@@ -0,0 +1,79 @@
+package httpUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * many small requests sent together by {@link HttpAsyncTaskManager#requestBatch}.
+ * they share the connections of {@link OkHttpUtil}, over HTTP/2 all of them go
+ * through one connection, and the handler is called once for the whole batch
+ */
+public class BatchRequest {
+
+    /** the per host limit of the OkHttp dispatcher, more would only wait there */
+    public static final int DEFAULT_MAX_CONCURRENCY = 5;
+
+    final List<Item> items = new ArrayList<Item>();
+    int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    long maxMemoryBytes = HttpRequest.DEFAULT_MAX_MEMORY_BYTES;
+
+    static class Item {
+        final String url;
+        /** null for a GET */
+        final String json;
+        final TaskHandler parser;
+
+        Item(String url, String json, TaskHandler parser) {
+            this.url = url;
+            this.json = json;
+            this.parser = parser;
+        }
+    }
+
+    /**
+     * a GET
+     * @param url
+     * @param parser its parseResult makes the result of the item, on a background
+     *               thread. none of its callbacks is called. null to keep the body String
+     * @return the index of the item in the {@link BatchResult}
+     */
+    public int add(String url, TaskHandler parser) {
+        items.add(new Item(url, null, parser));
+        return items.size() - 1;
+    }
+
+    /**
+     * a POST of a json String, like {@link HttpAsyncTaskManager#requestStream}
+     * @param url
+     * @param json
+     * @param parser see {@link #add(String, TaskHandler)}
+     * @return the index of the item in the {@link BatchResult}
+     */
+    public int addPost(String url, String json, TaskHandler parser) {
+        items.add(new Item(url, json, parser));
+        return items.size() - 1;
+    }
+
+    /** requests of the batch on the network at the same time */
+    public BatchRequest setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency < 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * the largest body of an item read into memory, a larger one fails the item
+     * with {@link BodyTooLargeException}. a {@link ReaderTaskHandler} is not limited
+     * @param bytes
+     */
+    public BatchRequest setMaxMemoryBytes(long bytes) {
+        this.maxMemoryBytes = bytes;
+        return this;
+    }
+
+    public int size() {
+        return items.size();
+    }
+}
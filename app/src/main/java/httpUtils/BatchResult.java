@@ -0,0 +1,75 @@
+package httpUtils;
+
+/**
+ * the outcome of every item of a {@link BatchRequest}, in the order they were added
+ */
+public class BatchResult {
+
+    /** the outcome of one item */
+    public static class Outcome {
+        int code = RetryPolicy.NO_RESPONSE;
+        Object result;
+        Exception error;
+
+        public boolean isSuccessful() {
+            return error == null && code >= 200 && code < 300;
+        }
+
+        /** the status of the response, {@link RetryPolicy#NO_RESPONSE} if there was none */
+        public int getCode() {
+            return code;
+        }
+
+        /** the parsed body of a successful item, null otherwise */
+        public Object getResult() {
+            return result;
+        }
+
+        /** why the item failed without a response or could not be parsed, may be null */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    final Outcome[] outcomes;
+    long elapsedMillis;
+
+    BatchResult(int size) {
+        outcomes = new Outcome[size];
+        for (int i = 0; i < size; i++) {
+            outcomes[i] = new Outcome();
+        }
+    }
+
+    public int size() {
+        return outcomes.length;
+    }
+
+    /** @param index as returned by {@link BatchRequest#add} */
+    public Outcome get(int index) {
+        return outcomes[index];
+    }
+
+    public int getSuccessCount() {
+        int count = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome.isSuccessful()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getFailedCount() {
+        return outcomes.length - getSuccessCount();
+    }
+
+    public boolean isAllSuccessful() {
+        return getSuccessCount() == outcomes.length;
+    }
+
+    /** from the start of the first request to the end of the last one */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
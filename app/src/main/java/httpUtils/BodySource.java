@@ -0,0 +1,56 @@
+package httpUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * a response body for {@link SourceTaskHandler}: in memory if it is small enough,
+ * else in a temp file that is deleted once the handler parsed it
+ */
+public class BodySource {
+
+    private final byte[] mBytes;
+    private final File mFile;
+    private final long mLength;
+
+    BodySource(byte[] bytes) {
+        this.mBytes = bytes;
+        this.mFile = null;
+        this.mLength = bytes.length;
+    }
+
+    BodySource(File file) {
+        this.mBytes = null;
+        this.mFile = file;
+        this.mLength = file.length();
+    }
+
+    public long length() {
+        return mLength;
+    }
+
+    /** true if the body was too large for memory and is in {@link #getFile()} */
+    public boolean isFile() {
+        return mFile != null;
+    }
+
+    /** the temp file, null if the body is in memory. rename it to keep it */
+    public File getFile() {
+        return mFile;
+    }
+
+    /** the body, the caller closes the stream. can be opened more than once */
+    public InputStream open() throws IOException {
+        return mFile != null ? new FileInputStream(mFile) : new ByteArrayInputStream(mBytes);
+    }
+
+    /** delete the temp file, if it is still there */
+    void delete() {
+        if (mFile != null && mFile.exists() && !mFile.delete()) {
+            android.util.Log.w("BodySource", "Could not delete " + mFile);
+        }
+    }
+}
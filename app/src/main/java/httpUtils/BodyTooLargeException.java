@@ -0,0 +1,23 @@
+package httpUtils;
+
+import java.io.IOException;
+
+/**
+ * a response body larger than the request allows in memory, see
+ * {@link HttpRequest#setMaxMemoryBytes(long)}. the call is not retried
+ */
+public class BodyTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long mMaxBytes;
+
+    public BodyTooLargeException(long maxBytes) {
+        super("body larger than " + maxBytes + " bytes");
+        this.mMaxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+}
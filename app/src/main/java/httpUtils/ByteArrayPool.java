@@ -0,0 +1,136 @@
+package httpUtils;
+
+import java.util.ArrayDeque;
+
+/**
+ * a pool of byte[] buffers in power of two size classes, so reading bodies
+ * does not allocate a new buffer per read. buffers are taken with
+ * {@link #getBuf(int)} and given back with {@link #returnBuf(byte[])},
+ * the pool keeps no more than {@link #getMaxRetainedBytes()} bytes.
+ */
+public class ByteArrayPool {
+
+    /** smallest size class, 1 KB */
+    private static final int MIN_SHIFT = 10;
+    /** largest size class, 256 KB, bigger buffers are never pooled */
+    private static final int MAX_SHIFT = 18;
+
+    public static final int DEFAULT_MAX_RETAINED_BYTES = 1024 * 1024;
+
+    private static ByteArrayPool sInstance;
+
+    private final ArrayDeque<byte[]>[] mBuckets;
+    private final int mMaxRetainedBytes;
+    private int mRetainedBytes;
+    private long mHitCount;
+    private long mMissCount;
+
+    @SuppressWarnings("unchecked")
+    public ByteArrayPool(int maxRetainedBytes) {
+        this.mMaxRetainedBytes = maxRetainedBytes;
+        mBuckets = new ArrayDeque[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = new ArrayDeque<byte[]>();
+        }
+    }
+
+    /** the pool shared by httpUtils */
+    public static synchronized ByteArrayPool get() {
+        if (sInstance == null) {
+            sInstance = new ByteArrayPool(DEFAULT_MAX_RETAINED_BYTES);
+        }
+        return sInstance;
+    }
+
+    /**
+     * a buffer of at least len bytes, its content is undefined
+     * @param len
+     * @return
+     */
+    public byte[] getBuf(int len) {
+        int bucket = bucketOf(len);
+        if (bucket < 0) {
+            synchronized (this) {
+                mMissCount++;
+            }
+            return new byte[len];
+        }
+        synchronized (this) {
+            byte[] buf = mBuckets[bucket].poll();
+            if (buf != null) {
+                mRetainedBytes -= buf.length;
+                mHitCount++;
+                return buf;
+            }
+            mMissCount++;
+        }
+        return new byte[1 << (bucket + MIN_SHIFT)];
+    }
+
+    /**
+     * give a buffer from {@link #getBuf(int)} back, it must not be used afterwards
+     * @param buf
+     */
+    public void returnBuf(byte[] buf) {
+        if (buf == null) {
+            return;
+        }
+        int bucket = bucketOf(buf.length);
+        if (bucket < 0 || buf.length != 1 << (bucket + MIN_SHIFT)) {
+            return;
+        }
+        synchronized (this) {
+            if (mRetainedBytes + buf.length > mMaxRetainedBytes) {
+                return;
+            }
+            mBuckets[bucket].push(buf);
+            mRetainedBytes += buf.length;
+        }
+    }
+
+    /** drop every pooled buffer */
+    public synchronized void clear() {
+        for (ArrayDeque<byte[]> bucket : mBuckets) {
+            bucket.clear();
+        }
+        mRetainedBytes = 0;
+    }
+
+    /** index of the smallest size class holding len bytes, -1 if too big */
+    private static int bucketOf(int len) {
+        int shift = MIN_SHIFT;
+        while (shift <= MAX_SHIFT && (1 << shift) < len) {
+            shift++;
+        }
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /** share of {@link #getBuf(int)} calls served from the pool, 0 to 1 */
+    public synchronized float getHitRate() {
+        long total = mHitCount + mMissCount;
+        return total == 0 ? 0f : (float) mHitCount / total;
+    }
+
+    /** bytes currently kept by the pool */
+    public synchronized int getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    public int getMaxRetainedBytes() {
+        return mMaxRetainedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ByteArrayPool{hits=" + mHitCount + ", misses=" + mMissCount
+                + ", retained=" + mRetainedBytes + "/" + mMaxRetainedBytes + "}";
+    }
+}
@@ -2,7 +2,7 @@ package httpUtils;
 
 
 /**
- * the implements of {@link TaskHandler} ,handler the {@link String}
+ * the implements of {@link TaskByteHandler} ,handler the byte[]
  */
 public abstract class ByteTaskHandler extends TaskByteHandler<byte[]> {
 
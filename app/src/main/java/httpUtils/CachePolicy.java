@@ -0,0 +1,43 @@
+package httpUtils;
+
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Request;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * how a GET uses the response cache installed by {@link OkHttpUtil#installCache}
+ */
+public enum CachePolicy {
+
+    /** follow the Cache-Control of the response, a stale entry is revalidated with ETag/Last-Modified */
+    DEFAULT,
+
+    /** always go to the network, the response is still stored */
+    NETWORK_ONLY,
+
+    /** use a cached response of any age, go to the network only when nothing is cached */
+    OFFLINE_FIRST,
+
+    /** like {@link #OFFLINE_FIRST}, but a stale response is revalidated in the background for the next call */
+    STALE_WHILE_REVALIDATE;
+
+    /**
+     * set the Cache-Control of the request for this policy
+     * @param builder
+     * @return the builder
+     */
+    public Request.Builder apply(Request.Builder builder) {
+        switch (this) {
+            case NETWORK_ONLY:
+                return builder.cacheControl(CacheControl.FORCE_NETWORK);
+            case OFFLINE_FIRST:
+            case STALE_WHILE_REVALIDATE:
+                return builder.cacheControl(new CacheControl.Builder()
+                        .maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS)
+                        .build());
+            default:
+                return builder;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package httpUtils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * counts how the calls of {@link OkHttpUtil} were answered by the response cache,
+ * see {@link OkHttpUtil#getCacheStats()}
+ */
+public class CacheStatsInterceptor implements Interceptor {
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mRevalidateCount = new AtomicLong();
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+    private final AtomicLong mBytesFromCache = new AtomicLong();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        Response cacheResponse = response.cacheResponse();
+        Response networkResponse = response.networkResponse();
+        if (cacheResponse == null) {
+            mMissCount.incrementAndGet();
+            MetricsInterceptor.recordCache(HttpTrace.Cache.NETWORK);
+        } else if (networkResponse == null) {
+            mHitCount.incrementAndGet();
+            MetricsInterceptor.recordCache(HttpTrace.Cache.HIT);
+            addBytesFromCache(response);
+        } else {
+            mRevalidateCount.incrementAndGet();
+            if (networkResponse.code() == 304) {
+                mNotModifiedCount.incrementAndGet();
+                MetricsInterceptor.recordCache(HttpTrace.Cache.NOT_MODIFIED);
+                addBytesFromCache(response);
+            } else {
+                MetricsInterceptor.recordCache(HttpTrace.Cache.REVALIDATED);
+            }
+        }
+        return response;
+    }
+
+    private void addBytesFromCache(Response response) throws IOException {
+        long length = response.body().contentLength();
+        if (length > 0) {
+            mBytesFromCache.addAndGet(length);
+        }
+    }
+
+    /** calls answered from the cache without the network */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /** calls with no usable cache entry */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /** calls that sent a conditional request for a stale entry */
+    public long getRevalidateCount() {
+        return mRevalidateCount.get();
+    }
+
+    /** revalidations the server answered with 304, the cached body was reused */
+    public long getNotModifiedCount() {
+        return mNotModifiedCount.get();
+    }
+
+    /** body bytes served from the cache instead of the network */
+    public long getBytesFromCache() {
+        return mBytesFromCache.get();
+    }
+
+    public void reset() {
+        mHitCount.set(0);
+        mMissCount.set(0);
+        mRevalidateCount.set(0);
+        mNotModifiedCount.set(0);
+        mBytesFromCache.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", revalidated=" + getRevalidateCount() + ", notModified=" + getNotModifiedCount()
+                + ", bytesFromCache=" + getBytesFromCache() + "}";
+    }
+}
@@ -0,0 +1,70 @@
+package httpUtils;
+
+/**
+ * what one call measured, filled in by {@link MetricsInterceptor} and added to
+ * {@link HttpMetrics} and {@link HttpTraceLog} when the body was read
+ */
+class CallMetrics {
+
+    final String method;
+    final String host;
+    final String path;
+    final long startNanos;
+    final long startMillis;
+    /** time in DNS lookups, 0 if the connection was pooled */
+    long dnsNanos;
+    /** time in TCP connects */
+    long connectNanos;
+    /** from the start of the call until a connection was ready */
+    long acquireNanos = -1;
+    /** from sending the request until the response headers arrived */
+    long ttfbNanos = -1;
+    long totalNanos;
+    boolean https;
+    /** request body bytes, as written to the connection */
+    long bytesSent;
+    /** size of a request body that was gzipped, 0 if none was */
+    long bytesBeforeCompression;
+    long bytesAfterCompression;
+    /** size on disk of the files of a {@link MultipartUpload}, 0 if there were none */
+    long uploadFileBytes;
+    /** what was sent of them, less if pictures were compressed */
+    long uploadSentBytes;
+    /** response body bytes, as read from the connection */
+    long bytesReceived;
+    /** response body bytes, as read by the caller after unzipping */
+    long bodyBytes;
+    int code = RetryPolicy.NO_RESPONSE;
+    boolean failed;
+    /** the attempt of the {@link DispatchTask} making the call */
+    int attempt = 1;
+    /** null until the response cache was asked */
+    HttpTrace.Cache cache;
+    String error;
+    /** made by a {@link DispatchTask}, which traces it when its run ended */
+    boolean tracedByTask;
+
+    CallMetrics(String method, String host, String path) {
+        this.method = method;
+        this.host = host;
+        this.path = path;
+        this.startNanos = System.nanoTime();
+        this.startMillis = System.currentTimeMillis();
+    }
+
+    boolean usedNetwork() {
+        return acquireNanos >= 0;
+    }
+
+    boolean newConnection() {
+        return connectNanos > 0;
+    }
+
+    /** the handshake is not seen directly: what connecting took besides DNS and TCP */
+    long tlsNanos() {
+        if (!https || !newConnection()) {
+            return 0;
+        }
+        return Math.max(0, acquireNanos - dnsNanos - connectNanos);
+    }
+}
@@ -0,0 +1,61 @@
+package httpUtils;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+
+/**
+ * a snapshot of the connection pool and dispatcher of a client,
+ * see {@link OkHttpUtil#getPoolStats()}
+ */
+public class ConnectionPoolStats {
+
+    private final int mConnectionCount;
+    private final int mIdleCount;
+    private final int mMultiplexedCount;
+    private final int mRunningCallCount;
+    private final int mQueuedCallCount;
+
+    ConnectionPoolStats(ConnectionPool pool, Dispatcher dispatcher) {
+        this.mConnectionCount = pool.getConnectionCount();
+        this.mIdleCount = pool.getIdleConnectionCount();
+        this.mMultiplexedCount = pool.getMultiplexedConnectionCount();
+        this.mRunningCallCount = dispatcher.getRunningCallCount();
+        this.mQueuedCallCount = dispatcher.getQueuedCallCount();
+    }
+
+    /** open connections, idle or not */
+    public int getConnectionCount() {
+        return mConnectionCount;
+    }
+
+    public int getIdleCount() {
+        return mIdleCount;
+    }
+
+    /** connections carrying a call */
+    public int getActiveCount() {
+        return Math.max(0, mConnectionCount - mIdleCount);
+    }
+
+    /** HTTP/2 or SPDY connections, shared by many calls */
+    public int getMultiplexedCount() {
+        return mMultiplexedCount;
+    }
+
+    /** asynchronous calls running */
+    public int getRunningCallCount() {
+        return mRunningCallCount;
+    }
+
+    /** asynchronous calls waiting for the dispatcher limits */
+    public int getQueuedCallCount() {
+        return mQueuedCallCount;
+    }
+
+    @Override
+    public String toString() {
+        return "connections=" + mConnectionCount + " idle=" + mIdleCount
+                + " active=" + getActiveCount() + " multiplexed=" + mMultiplexedCount
+                + " running=" + mRunningCallCount + " queued=" + mQueuedCallCount;
+    }
+}
@@ -0,0 +1,195 @@
+package httpUtils;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.squareup.okhttp.Request;
+
+/**
+ * a unit of work for {@link RequestDispatcher}, shaped like AsyncTask:
+ * {@link #doInBackground()} runs on a worker, {@link #onPostExecute(Object)} on the main thread.
+ * after {@link #cancel()} neither runs anymore
+ */
+abstract class DispatchTask<Result> implements Runnable, RequestHandle {
+
+    private static final String TAG = DispatchTask.class.getSimpleName();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    final String url;
+    final String host;
+    /** changed by {@link RequestDispatcher#setPriority} while holding the dispatcher's lock */
+    RequestDispatcher.Priority priority;
+    CachePolicy cachePolicy = CachePolicy.DEFAULT;
+    RetryPolicy retryPolicy;
+    /** wait for the network instead of failing when queued offline */
+    boolean parkWhenOffline;
+    /** deliver the result with the others of the frame, see {@link MainThreadDelivery} */
+    boolean batchDelivery;
+    RequestDispatcher dispatcher;
+    /** the group of the task for {@link RequestDispatcher#cancelAll(Object)}, may be null */
+    Object tag;
+    private volatile boolean mCanceled;
+    /** the attempt being run, starting with 1 */
+    int attempt = 1;
+    /** set by {@link #retryLater} for the run that just failed */
+    private long mRetryDelay = -1;
+    /** aborted by the dispatcher for an immediate task, see {@link #abort()} */
+    private volatile boolean mPreempted;
+    /** the aborted run failed, queue the task again instead of reporting it */
+    private boolean mRequeue;
+    /** the last call of the running attempt, set by {@link MetricsInterceptor} */
+    CallMetrics metrics;
+    /** what went wrong in the running attempt, set by {@link #doInBackground()} for the trace */
+    Throwable failure;
+
+    DispatchTask(String url, RequestDispatcher.Priority priority) {
+        this.url = url;
+        this.priority = priority;
+        String host = url == null ? null : Uri.parse(url).getHost();
+        this.host = host == null ? "" : host;
+    }
+
+    /** a request for the url, tagged so {@link #cancel()} can abort its call */
+    protected Request.Builder newRequest() {
+        return new Request.Builder().url(url).tag(this);
+    }
+
+    @Override
+    public void cancel() {
+        if (mCanceled) {
+            return;
+        }
+        mCanceled = true;
+        if (dispatcher != null) {
+            dispatcher.cancel(this);
+        }
+        OkHttpUtil.cancel(this);
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /** called by the dispatcher, holding its lock, before {@link #abort()} */
+    void markPreempted() {
+        mPreempted = true;
+    }
+
+    boolean isPreempted() {
+        return mPreempted;
+    }
+
+    /** abort the running call to free the worker, the task is queued again */
+    void abort() {
+        OkHttpUtil.cancel(this);
+    }
+
+    /** called on the thread that enqueued the task */
+    protected void onPreExecute() {
+    }
+
+    /** called on a worker thread of the dispatcher */
+    protected abstract Result doInBackground();
+
+    /**
+     * called by {@link #doInBackground()} after a failed attempt, instead of reporting the error
+     * @param method the HTTP method
+     * @param code the response status or {@link RetryPolicy#NO_RESPONSE}
+     * @return true if the failure is not to be reported: another attempt is scheduled
+     * or the task was canceled. the result of this run is dropped
+     */
+    protected boolean retryLater(String method, int code) {
+        if (mCanceled) {
+            return true;
+        }
+        if (mPreempted) {
+            // not this task's failure, it runs again without using up an attempt
+            mRequeue = true;
+            return true;
+        }
+        if (retryPolicy == null || !retryPolicy.shouldRetry(attempt, method, code)) {
+            return false;
+        }
+        mRetryDelay = retryPolicy.getDelayMillis(attempt);
+        return true;
+    }
+
+    /** called on the main thread with the result of {@link #doInBackground()} */
+    protected void onPostExecute(Result result) {
+    }
+
+    @Override
+    public final void run() {
+        Result result = null;
+        try {
+            if (!mCanceled) {
+                result = doInBackground();
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            dispatcher.finished(this);
+        }
+        trace();
+        mPreempted = false;
+        if (mCanceled) {
+            return;
+        }
+        if (mRequeue) {
+            mRequeue = false;
+            mRetryDelay = -1;
+            dispatcher.requeue(this);
+            return;
+        }
+        if (mRetryDelay >= 0) {
+            // the worker is released, the task is queued again once the backoff passed
+            long delay = mRetryDelay;
+            mRetryDelay = -1;
+            attempt++;
+            dispatcher.retryLater(this, delay);
+            return;
+        }
+        final Result finalResult = result;
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCanceled) {
+                    onPostExecute(finalResult);
+                }
+                dispatcher.unregister(tag, DispatchTask.this);
+            }
+        });
+    }
+
+    /** hand the call of the attempt that ended to the {@link HttpTraceLog} */
+    private void trace() {
+        CallMetrics call = metrics;
+        Throwable e = failure;
+        metrics = null;
+        failure = null;
+        if (call == null) {
+            if (e != null) {
+                // failed before it made a call, there is nothing to trace
+                Log.e(TAG, url + " failed before its call", e);
+            }
+            return;
+        }
+        if (e != null) {
+            call.error = e.toString();
+        }
+        HttpTraceLog.get().record(call);
+    }
+
+    /** run the callback on the main thread, with the others of the frame if {@link #batchDelivery} */
+    void deliver(Runnable delivery) {
+        if (batchDelivery) {
+            MainThreadDelivery.get().post(delivery);
+        } else {
+            sMainHandler.post(delivery);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package httpUtils;
+
+import java.io.File;
+
+/**
+ * the result of {@link HttpDownloadManager#download}, called on the main thread
+ */
+public abstract class DownloadHandler {
+
+    /** the connection failed, also after the retries */
+    public static final int ERROR_NETWORK = 1;
+    /** the server answered with an error status */
+    public static final int ERROR_HTTP = 2;
+    /** the file could not be written */
+    public static final int ERROR_FILE = 3;
+    /** the file does not fit into the free space of its storage */
+    public static final int ERROR_NO_SPACE = 4;
+    /** the size or checksum of the file is wrong, or it changed on the server during the download */
+    public static final int ERROR_VERIFY = 5;
+
+    /** finish */
+    public void onFinish() {
+    }
+
+    /** network is break */
+    public void onNetError() {
+    }
+
+    /**
+     * the file is complete and verified
+     * @param file
+     */
+    public abstract void onSuccess(File file);
+
+    /**
+     * the download stopped, the .part file is kept to continue it later unless
+     * it failed verification
+     * @param reason one of the ERROR_ constants
+     */
+    public abstract void onFail(int reason);
+}
@@ -0,0 +1,92 @@
+package httpUtils;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * a file to download with {@link HttpDownloadManager#download}. the body is
+ * written to {@code <file>.part} and renamed to the file once it is verified,
+ * an interrupted download continues from the .part file
+ */
+public class DownloadRequest {
+
+    public static final int DEFAULT_SEGMENTS = 3;
+    /** smaller files are not split, more connections would not pay off */
+    public static final long DEFAULT_SEGMENT_THRESHOLD = 4 * 1024 * 1024;
+
+    final String url;
+    final File file;
+    int segments = DEFAULT_SEGMENTS;
+    long segmentThreshold = DEFAULT_SEGMENT_THRESHOLD;
+    long expectedSize = -1;
+    String checksumAlgorithm;
+    String checksum;
+    RetryPolicy retryPolicy;
+    ProgressListener listener;
+
+    public DownloadRequest(String url, File file) {
+        this.url = url;
+        this.file = file;
+    }
+
+    /**
+     * download a large file over several connections at once, needs a server
+     * that accepts Range requests
+     * @param segments number of connections, 1 to download in one piece
+     * @param threshold files smaller than this are downloaded in one piece
+     */
+    public DownloadRequest setSegments(int segments, long threshold) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments < 1");
+        }
+        this.segments = segments;
+        this.segmentThreshold = threshold;
+        return this;
+    }
+
+    /** fail instead of keeping a file of another size */
+    public DownloadRequest setExpectedSize(long size) {
+        this.expectedSize = size;
+        return this;
+    }
+
+    /**
+     * fail instead of keeping a file with another digest
+     * @param algorithm a MessageDigest algorithm, e.g. "MD5" or "SHA-256"
+     * @param hex the expected digest
+     */
+    public DownloadRequest setChecksum(String algorithm, String hex) {
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("no " + algorithm);
+        }
+        this.checksumAlgorithm = algorithm;
+        this.checksum = hex;
+        return this;
+    }
+
+    /**
+     * retries of a failed connection, each continues where it stopped.
+     * {@link HttpDownloadManager#DEFAULT_RETRY} if not set
+     */
+    public DownloadRequest setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+        return this;
+    }
+
+    /** called on the main thread while the file is downloaded */
+    public DownloadRequest setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
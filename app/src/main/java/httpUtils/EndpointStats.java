@@ -0,0 +1,201 @@
+package httpUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * the calls of one host or endpoint, see {@link HttpMetrics}
+ */
+public class EndpointStats {
+
+    private final LatencyHistogram mLatency;
+    private final LatencyHistogram mTtfb;
+    private long mCount;
+    private long mFailureCount;
+    private long mCacheCount;
+    private long mNewConnectionCount;
+    private long mDnsNanos;
+    private long mConnectNanos;
+    private long mTlsNanos;
+    private long mBytesSent;
+    private long mBytesReceived;
+    private long mCompressedCount;
+    private long mBytesBeforeCompression;
+    private long mBytesAfterCompression;
+    private long mMaxBodyBytes;
+    private long mUploadCount;
+    private long mUploadFileBytes;
+    private long mUploadSentBytes;
+
+    EndpointStats() {
+        this(new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    private EndpointStats(LatencyHistogram latency, LatencyHistogram ttfb) {
+        this.mLatency = latency;
+        this.mTtfb = ttfb;
+    }
+
+    synchronized void record(CallMetrics call) {
+        mCount++;
+        mMaxBodyBytes = Math.max(mMaxBodyBytes, call.bodyBytes);
+        if (call.failed) {
+            mFailureCount++;
+        } else {
+            mLatency.record(TimeUnit.NANOSECONDS.toMillis(call.totalNanos));
+        }
+        if (!call.usedNetwork()) {
+            if (!call.failed) {
+                mCacheCount++;
+            }
+            return;
+        }
+        if (call.ttfbNanos >= 0) {
+            mTtfb.record(TimeUnit.NANOSECONDS.toMillis(call.ttfbNanos));
+        }
+        if (call.newConnection()) {
+            mNewConnectionCount++;
+            mDnsNanos += call.dnsNanos;
+            mConnectNanos += call.connectNanos;
+            mTlsNanos += call.tlsNanos();
+        }
+        mBytesSent += call.bytesSent;
+        mBytesReceived += call.bytesReceived;
+        if (call.bytesBeforeCompression > 0) {
+            mCompressedCount++;
+            mBytesBeforeCompression += call.bytesBeforeCompression;
+            mBytesAfterCompression += call.bytesAfterCompression;
+        }
+        if (call.uploadFileBytes > 0) {
+            mUploadCount++;
+            mUploadFileBytes += call.uploadFileBytes;
+            mUploadSentBytes += call.uploadSentBytes;
+        }
+    }
+
+    synchronized EndpointStats copy() {
+        EndpointStats copy = new EndpointStats(mLatency.copy(), mTtfb.copy());
+        copy.mCount = mCount;
+        copy.mFailureCount = mFailureCount;
+        copy.mCacheCount = mCacheCount;
+        copy.mNewConnectionCount = mNewConnectionCount;
+        copy.mDnsNanos = mDnsNanos;
+        copy.mConnectNanos = mConnectNanos;
+        copy.mTlsNanos = mTlsNanos;
+        copy.mBytesSent = mBytesSent;
+        copy.mBytesReceived = mBytesReceived;
+        copy.mCompressedCount = mCompressedCount;
+        copy.mBytesBeforeCompression = mBytesBeforeCompression;
+        copy.mBytesAfterCompression = mBytesAfterCompression;
+        copy.mMaxBodyBytes = mMaxBodyBytes;
+        copy.mUploadCount = mUploadCount;
+        copy.mUploadFileBytes = mUploadFileBytes;
+        copy.mUploadSentBytes = mUploadSentBytes;
+        return copy;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /** calls that ended without a response or with a broken body */
+    public synchronized long getFailureCount() {
+        return mFailureCount;
+    }
+
+    /** calls answered by the cache without the network */
+    public synchronized long getCacheCount() {
+        return mCacheCount;
+    }
+
+    /** calls that had to open a connection, the others reused a pooled one */
+    public synchronized long getNewConnectionCount() {
+        return mNewConnectionCount;
+    }
+
+    /** from the start of the call until the body was read, of the calls that did not fail */
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    /** from sending the request until the response headers arrived */
+    public LatencyHistogram getTimeToFirstByte() {
+        return mTtfb;
+    }
+
+    /** mean DNS lookup time of the calls that opened a connection */
+    public synchronized long getMeanDnsMillis() {
+        return meanMillis(mDnsNanos);
+    }
+
+    /** mean TCP connect time of the calls that opened a connection */
+    public synchronized long getMeanConnectMillis() {
+        return meanMillis(mConnectNanos);
+    }
+
+    /** mean TLS handshake time of the calls that opened a connection */
+    public synchronized long getMeanTlsMillis() {
+        return meanMillis(mTlsNanos);
+    }
+
+    private long meanMillis(long nanos) {
+        return mNewConnectionCount == 0 ? 0
+                : TimeUnit.NANOSECONDS.toMillis(nanos / mNewConnectionCount);
+    }
+
+    public synchronized long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    /** the largest response body, unzipped, also of the calls from the cache */
+    public synchronized long getMaxBodyBytes() {
+        return mMaxBodyBytes;
+    }
+
+    /** requests whose body was gzipped, see {@link GzipRequestInterceptor} */
+    public synchronized long getCompressedCount() {
+        return mCompressedCount;
+    }
+
+    /** size of the gzipped bodies after compression divided by their size before, 1 if none */
+    public synchronized float getCompressionRatio() {
+        return mBytesBeforeCompression == 0 ? 1f
+                : (float) mBytesAfterCompression / mBytesBeforeCompression;
+    }
+
+    /** bytes that gzipping request bodies kept off the network */
+    public synchronized long getBytesSavedByCompression() {
+        return mBytesBeforeCompression - mBytesAfterCompression;
+    }
+
+    /** multipart calls that sent files, see {@link MultipartUpload} */
+    public synchronized long getUploadCount() {
+        return mUploadCount;
+    }
+
+    /** size on disk of the files of the uploads */
+    public synchronized long getUploadFileBytes() {
+        return mUploadFileBytes;
+    }
+
+    /** what was sent of the files, less than {@link #getUploadFileBytes()} if pictures were compressed */
+    public synchronized long getUploadSentBytes() {
+        return mUploadSentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "calls=" + mCount + " failed=" + mFailureCount + " cached=" + mCacheCount
+                + " latency[" + mLatency + "] ttfb[" + mTtfb + "]"
+                + " newConnections=" + mNewConnectionCount + " dns=" + getMeanDnsMillis()
+                + " connect=" + getMeanConnectMillis() + " tls=" + getMeanTlsMillis()
+                + " sent=" + mBytesSent + " received=" + mBytesReceived
+                + " maxBody=" + mMaxBodyBytes
+                + " gzipped=" + mCompressedCount + " ratio=" + getCompressionRatio()
+                + " uploads=" + mUploadCount + " files=" + mUploadFileBytes
+                + " filesSent=" + mUploadSentBytes;
+    }
+}
@@ -0,0 +1,142 @@
+package httpUtils;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+
+import java.util.Map;
+
+/**
+ * {@code application/x-www-form-urlencoded} encoding of query strings and form bodies,
+ * as UTF-8. the pairs are percent-encoded straight into a buffer kept per thread,
+ * without the encoder and the intermediate Strings of URLEncoder or URLEncodedUtils
+ */
+public final class FormEncoder {
+
+    public static final MediaType FORM = MediaType.parse("application/x-www-form-urlencoded");
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    /** a buffer that grew beyond this is not kept for the next call */
+    private static final int MAX_RETAINED_CHARS = 8 * 1024;
+
+    private static final ThreadLocal<StringBuilder> sBuffer = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private FormEncoder() {
+    }
+
+    /** the empty buffer of this thread */
+    static StringBuilder buffer() {
+        StringBuilder sb = sBuffer.get();
+        if (sb.capacity() > MAX_RETAINED_CHARS) {
+            sb = new StringBuilder(256);
+            sBuffer.set(sb);
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
+    /**
+     * @param params a null value is written as the name alone
+     * @return e.g. {@code page=2&q=a+b}
+     */
+    public static String format(Map<String, String> params) {
+        StringBuilder sb = buffer();
+        if (params != null) {
+            append(sb, params);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param url may already have a query
+     * @param params
+     * @return the url with the params added to its query
+     */
+    public static String attach(String url, Map<String, String> params) {
+        if (params == null || params.isEmpty()) {
+            return url;
+        }
+        StringBuilder sb = buffer().append(url);
+        if (url.indexOf('?') < 0) {
+            sb.append('?');
+        }
+        append(sb, params);
+        return sb.toString();
+    }
+
+    /** a form body of the params, for a POST */
+    public static RequestBody body(Map<String, String> params) {
+        StringBuilder sb = buffer();
+        if (params != null) {
+            append(sb, params);
+        }
+        // the encoded form is ASCII, one byte per char
+        byte[] bytes = new byte[sb.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) sb.charAt(i);
+        }
+        return RequestBody.create(FORM, bytes);
+    }
+
+    static void append(StringBuilder sb, Map<String, String> params) {
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+            appendPair(sb, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** {@code name=value}, with a '&' before it if it does not start the query */
+    static void appendPair(StringBuilder sb, String name, String value) {
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) != '?' && sb.charAt(length - 1) != '&') {
+            sb.append('&');
+        }
+        encode(sb, name);
+        if (value != null) {
+            sb.append('=');
+            encode(sb, value);
+        }
+    }
+
+    /** percent-encode s into sb: letters, digits and "*-._" are kept, space becomes '+' */
+    static void encode(StringBuilder sb, String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '*' || c == '-' || c == '.' || c == '_') {
+                sb.append(c);
+            } else if (c == ' ') {
+                sb.append('+');
+            } else if (c < 0x80) {
+                percent(sb, c);
+            } else if (c < 0x800) {
+                percent(sb, 0xc0 | c >> 6);
+                percent(sb, 0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                percent(sb, 0xf0 | codePoint >> 18);
+                percent(sb, 0x80 | codePoint >> 12 & 0x3f);
+                percent(sb, 0x80 | codePoint >> 6 & 0x3f);
+                percent(sb, 0x80 | codePoint & 0x3f);
+            } else {
+                if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    // a lone surrogate, encoded as '?' like String.getBytes does
+                    percent(sb, '?');
+                    continue;
+                }
+                percent(sb, 0xe0 | c >> 12);
+                percent(sb, 0x80 | c >> 6 & 0x3f);
+                percent(sb, 0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    private static void percent(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[b >> 4 & 0xf]).append(HEX[b & 0xf]);
+    }
+}
@@ -0,0 +1,122 @@
+package httpUtils;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * gzips large request bodies while they are written, with {@code Content-Encoding: gzip}.
+ * the server has to accept that, so nothing is compressed until its endpoints are
+ * {@link #allow allowed}:
+ * <pre>
+ * OkHttpUtil.getRequestCompression().allow("api.example.com/sync");
+ * </pre>
+ * the sizes before and after go into {@link HttpMetrics}
+ */
+public class GzipRequestInterceptor implements Interceptor {
+
+    /** below this the gzip header costs about what it saves */
+    public static final long DEFAULT_THRESHOLD = 4 * 1024;
+
+    private final List<String> mAllowed = new CopyOnWriteArrayList<String>();
+    private volatile long mThreshold = DEFAULT_THRESHOLD;
+
+    /**
+     * compress the bodies sent to the endpoint
+     * @param endpoint a host, e.g. {@code api.example.com}, or a host and path prefix,
+     *                 e.g. {@code api.example.com/sync}
+     */
+    public void allow(String endpoint) {
+        mAllowed.add(endpoint);
+    }
+
+    public void disallow(String endpoint) {
+        mAllowed.remove(endpoint);
+    }
+
+    /** bodies smaller than this are sent as they are, as are bodies of unknown length */
+    public void setThreshold(long bytes) {
+        this.mThreshold = bytes;
+    }
+
+    public long getThreshold() {
+        return mThreshold;
+    }
+
+    boolean isAllowed(URL url) {
+        String host = url.getHost();
+        for (String endpoint : mAllowed) {
+            int slash = endpoint.indexOf('/');
+            if (slash < 0 ? endpoint.equalsIgnoreCase(host)
+                    : endpoint.regionMatches(true, 0, host, 0, slash) && slash == host.length()
+                    && url.getPath().startsWith(endpoint.substring(slash))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (body == null || mAllowed.isEmpty()
+                || request.header("Content-Encoding") != null
+                || body.contentLength() < mThreshold
+                || !isAllowed(request.url())) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), new GzipBody(body))
+                .build());
+    }
+
+    /** the body compressed on the fly, its length is only known after writing */
+    private static class GzipBody extends RequestBody {
+
+        private final RequestBody mBody;
+
+        GzipBody(RequestBody body) {
+            this.mBody = body;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            final long[] compressed = new long[1];
+            BufferedSink gzip = Okio.buffer(new GzipSink(new ForwardingSink(sink) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    super.write(source, byteCount);
+                    compressed[0] += byteCount;
+                }
+            }));
+            mBody.writeTo(gzip);
+            gzip.close();
+            MetricsInterceptor.recordCompression(mBody.contentLength(), compressed[0]);
+        }
+    }
+}
@@ -5,37 +5,179 @@ package httpUtils;
  */
 
 import android.content.Context;
-import android.os.AsyncTask;
-import android.util.Log;
 
 import com.squareup.okhttp.MediaType;
-import com.squareup.okhttp.MultipartBuilder;
-import com.squareup.okhttp.Request;
-import com.squareup.okhttp.RequestBody;
-import com.squareup.okhttp.Response;
-
-import org.apache.http.NameValuePair;
-import org.apache.http.message.BasicNameValuePair;
 
 import java.io.File;
-import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
- * start http request from this,it extends AsyncTask
+ * start http request from this,the tasks run on a {@link RequestDispatcher}
  */
 public class HttpAsyncTaskManager implements AsyncRequest {
 
     private Context mContext;
+    private RequestDispatcher mDispatcher;
+    private RequestDispatcher.Priority mPriority;
+    private CachePolicy mCachePolicy = CachePolicy.DEFAULT;
+    private RetryPolicy mRetryPolicy;
+    private Object mTag;
+    private boolean mParkWhenOffline;
+    private ImageCompressor mImageCompressor;
+    private boolean mBatchDelivery;
+    private long mResultTtlMillis = -1;
     public static final MediaType JSON = MediaType.parse("application/json;charset=utf-8");
 
     private static final String TAG = HttpAsyncTaskManager.class
             .getSimpleName();
 
+    /** identical GETs in flight share one call */
+    private static final SingleFlight sFlights = new SingleFlight();
+
     public HttpAsyncTaskManager(Context context) {
-        this.mContext = context;
+        this(context, RequestDispatcher.getDefault());
+    }
+
+    public HttpAsyncTaskManager(Context context, RequestDispatcher dispatcher) {
+        // the requests may outlive an Activity, don't keep it
+        this.mContext = context != null ? context.getApplicationContext() : null;
+        this.mDispatcher = dispatcher;
+        this.mPriority = RequestDispatcher.Priority.NORMAL;
+        if (mContext != null) {
+            NetworkMonitor.get(mContext);
+            ResultCache.get().register(mContext);
+        }
+    }
+
+    /** copy the options of another manager, see the with* methods */
+    private HttpAsyncTaskManager(HttpAsyncTaskManager other) {
+        this.mContext = other.mContext;
+        this.mDispatcher = other.mDispatcher;
+        this.mPriority = other.mPriority;
+        this.mCachePolicy = other.mCachePolicy;
+        this.mRetryPolicy = other.mRetryPolicy;
+        this.mTag = other.mTag;
+        this.mParkWhenOffline = other.mParkWhenOffline;
+        this.mImageCompressor = other.mImageCompressor;
+        this.mBatchDelivery = other.mBatchDelivery;
+        this.mResultTtlMillis = other.mResultTtlMillis;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose requests are queued with the priority,
+     * e.g. {@code manager.withPriority(Priority.PREFETCH).requestStream(...)}
+     * @param priority
+     * @return
+     */
+    public HttpAsyncTaskManager withPriority(RequestDispatcher.Priority priority) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mPriority = priority;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose GET requests use the cache policy,
+     * needs {@link OkHttpUtil#installCache} to have an effect
+     * @param policy
+     * @return
+     */
+    public HttpAsyncTaskManager withCachePolicy(CachePolicy policy) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mCachePolicy = policy;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose failed requests are retried by the policy,
+     * the backoff is waited out without holding a worker thread
+     * @param policy null for no retry
+     * @return
+     */
+    public HttpAsyncTaskManager withRetryPolicy(RetryPolicy policy) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mRetryPolicy = policy;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose requests are in the group of the tag,
+     * e.g. {@code withTag(this)} in an Activity and {@link #cancelAll(Object)} in onDestroy
+     * @param tag
+     * @return
+     */
+    public HttpAsyncTaskManager withTag(Object tag) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mTag = tag;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose requests made while offline are
+     * parked instead of failing with onNetError, and sent when the network is back
+     * @param park
+     * @return
+     */
+    public HttpAsyncTaskManager withParkWhenOffline(boolean park) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mParkWhenOffline = park;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose {@link #requestMapStream} makes the
+     * picture smaller before sending it
+     * @param compressor null to send the file as it is
+     * @return
+     */
+    public HttpAsyncTaskManager withImageCompressor(ImageCompressor compressor) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mImageCompressor = compressor;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose handlers are called with the others
+     * that finished in the same frame, see {@link MainThreadDelivery}
+     * @param batch
+     * @return
+     */
+    public HttpAsyncTaskManager withBatchedDelivery(boolean batch) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mBatchDelivery = batch;
+        return manager;
+    }
+
+    /**
+     * a manager sharing this one's dispatcher whose GET results are kept in the
+     * {@link ResultCache}, see {@link HttpRequest#setResultTtl}. its GETs are not
+     * shared with identical ones in flight, a repeated request gets the kept result.
+     * the handlers must not change the results they get, they are shared
+     * @param ttl
+     * @param unit
+     * @return
+     */
+    public HttpAsyncTaskManager withResultCache(long ttl, TimeUnit unit) {
+        HttpAsyncTaskManager manager = new HttpAsyncTaskManager(this);
+        manager.mResultTtlMillis = unit.toMillis(ttl);
+        return manager;
+    }
+
+    /**
+     * change the priority of a request made by this manager, e.g. make a prefetch
+     * immediate once what it loads is on screen, see {@link RequestDispatcher#setPriority}
+     * @param handle
+     * @param priority
+     * @return
+     */
+    public boolean setPriority(RequestHandle handle, RequestDispatcher.Priority priority) {
+        return mDispatcher.setPriority(handle, priority);
+    }
+
+    public RequestDispatcher getDispatcher() {
+        return mDispatcher;
     }
 
     /**
@@ -44,14 +186,9 @@ public class HttpAsyncTaskManager implements AsyncRequest {
      * @param param
      * @param handler
      */
-    public void requestStream(String url, String param,
+    public RequestHandle requestStream(String url, String param,
                               TaskHandler handler) {
-        if (mContext != null) {
-            synchronized (this) {
-                new HttpStreamTask(mContext, url, 1, param, handler).execute("");
-            }
-
-        }
+        return request(HttpRequest.postJson(url, param), handler);
     }
 
     /**
@@ -60,454 +197,191 @@ public class HttpAsyncTaskManager implements AsyncRequest {
      * @param param
      * @param handler
      */
-    public void requestStreamBytes(String url, String param,
+    public RequestHandle requestStreamBytes(String url, String param,
                                    TaskByteHandler handler) {
-        if (mContext != null) {
-            synchronized (this) {
-                new HttpStreamBytesTask(mContext, url, 1, param, handler).execute("");
-            }
-
-        }
+        return request(HttpRequest.postJson(url, param), handler);
     }
 
     /**
      * post picture and describe
      * @param url
-     * @param param
+     * @param param storehouseId, title and the path of the picture
      * @param handler
      */
-    public void requestMapStream(String url, List<String> param,
+    public RequestHandle requestMapStream(String url, List<String> param,
                               TaskHandler handler) {
-        if (mContext != null) {
-            synchronized (this) {
-                new HttpMapStreamTask(mContext, url, 1, param, handler).execute("");
-            }
-
+        MultipartUpload upload = new MultipartUpload()
+                .addHeader("Authorization", "Client-ID " + IMGUR_CLIENT_ID)
+                .addField("storehouseId", param.get(0))
+                .addField("title", param.get(1));
+        String fileName = System.currentTimeMillis() + "pest.jpg";
+        File picture = new File(param.get(2));
+        if (mImageCompressor != null) {
+            upload.addImage("image", fileName, picture, mImageCompressor);
+        } else {
+            upload.addFile("image", fileName, picture, MEDIA_TYPE_JPG);
         }
+        return requestUpload(url, upload, handler);
     }
 
     /**
-     * get request
-     *
+     * multipart post of fields and files, the files are streamed from disk
      * @param url
+     * @param upload
      * @param handler
      */
-    public void request(String url, TaskHandler handler) {
-        if (mContext != null) {
-            synchronized (this) {
-                new HttpTask(mContext, url, 0, null, handler).execute("");
-            }
-
-        }
+    public RequestHandle requestUpload(String url, MultipartUpload upload,
+                              TaskHandler handler) {
+        return request(HttpRequest.upload(url, upload), handler);
     }
 
     /**
-     * post request
-     *
+     * upload a file in chunks, a failed attempt resumes where the server stopped.
+     * without a {@link #withRetryPolicy retry policy} {@link #DEFAULT_UPLOAD_RETRY} is used
      * @param url
-     * @param params
-     *            url parameters,if not use null
+     * @param upload
      * @param handler
      */
-    public void request(String url, Map<String, String> params,
-                        TaskHandler handler) {
-        if (mContext != null) {
-            synchronized (this) {
-                new HttpTask(mContext, url, 1, params, handler).execute("");
-            }
-        }
+    public RequestHandle requestResumableUpload(String url, ResumableUpload upload,
+                              TaskHandler handler) {
+        return request(HttpRequest.resumableUpload(url, upload)
+                .setRetryPolicy(mRetryPolicy != null ? mRetryPolicy : DEFAULT_UPLOAD_RETRY), handler);
     }
 
-    /** Map task
-     *
-     * need test、、
+    /**
+     * get request. identical GETs in flight at the same time share one call, handlers
+     * of the same class get the same parsed object: a handler must not change it,
+     * another caller would see the change. copy it first, or parse into immutable results
      *
-     **/
-    private static class HttpTask extends AsyncTask<String, Integer, String> {
-
-        Context context;
-        String url;
-        /** 0 is get,1 is post */
-        int type = 0;
-        TaskHandler handler;
-        Map<String, String> params;
-
-        public HttpTask(Context context, String url, int type,
-                        Map<String, String> params, TaskHandler handler) {
-            this.context = context;
-            this.url = url;
-            this.type = type;
-            this.handler = handler;
-            this.params = params;
-        }
-
-        @Override
-        protected void onPreExecute() {
-            if (!NetWorkStatus.networkIsAvailable(context)) {// network is break
-                handler.onNetError();
-            }
-        }
-
-        @Override
-        protected String doInBackground(String... param) {
-            // TODO Auto-generated method stub
-            if (NetWorkStatus.networkIsAvailable(context)) {// network is well
-                String responseStr = null;
-                InputStream is = null;
-                Request request = null;
-                Response response = null;
-                if(type == 0){  //get
-                    try {
-                        request = new Request.Builder().url(url).build();
-                        response = OkHttpUtil.execute(request);
-                        if (response.isSuccessful()) {
-                            is = response.body().byteStream();
-                            responseStr = IOUtils.stream2String(is);
-                            return responseStr;
-                        } else {
-                            handler.onError();
-                            Log.e(TAG, IOUtils.stream2String(is));
-//                            throw new IOException("Unexpected code " + response);
-                        }
-
-                    } catch (Exception e) {
-                        Log.e(TAG, "____get___" + e.toString() + "_____");
-                        handler.onError();
-                    }
-                } else {// post
-                    try {
-
-                        List<NameValuePair> pair = new ArrayList<NameValuePair>();
-                        if (params != null && !params.isEmpty()) {
-                            for (Map.Entry<String, String> entry : params
-                                    .entrySet()) {
-                                pair.add(new BasicNameValuePair(entry.getKey(),
-                                        entry.getValue()));
-                            }
-                        }
-
-                        RequestBody body = new MultipartBuilder()
-                                .type(MultipartBuilder.FORM)
-                                .addPart(
-                                        RequestBody.create(MediaType.parse("UTF-8"), pair.toString()))
-                                .build();
-                        request = new Request.Builder()
-                                .url(url)
-                                .post(body)
-                                .build();
-
-                        response = OkHttpUtil.execute(request);
-                        if (response.isSuccessful()) {
-                            is = response.body().byteStream();
-                            return IOUtils.stream2String(is);
-                        } else {
-                            handler.onError();
-                            Log.e(TAG, IOUtils.stream2String(is));
-                        }
-
-                    } catch (Exception e) {
-
-                        Log.e(TAG, "____post___" + e.toString() + "_____");
-                        handler.onError();
-                    }
-                }
-            }
+     * @param url
+     * @param handler
+     */
+    public RequestHandle request(String url, TaskHandler handler) {
+        if (mContext == null) {
             return null;
         }
-
-        protected void onPostExecute(String result) {
-            if (result == null) {
-                handler.onFail();
-            } else {
-                handler.onSuccess(handler.parseResult(result));
+        if (mResultTtlMillis >= 0 || handler instanceof TaskByteHandler
+                || handler instanceof SourceTaskHandler) {
+            // a flight gives its members the body as a String
+            return request(HttpRequest.get(url), handler);
+        }
+        SingleFlight.Member member = sFlights.join(
+                SingleFlight.key("GET", url, null, handler), flightOptions(), handler, mTag,
+                mDispatcher);
+        mDispatcher.register(mTag, member);
+        if (member.isLeader()) {
+            // the flight's task has no tag, it is canceled when its last member is
+            HttpCall call = newCall(HttpRequest.get(url), member.flight);
+            if (sFlights.start(member.flight, call)) {
+                enqueue(call, null);
             }
-            handler.onFinish();
         }
+        return member;
+    }
 
+    /** what a GET shares with the identical ones it is coalesced with */
+    private List<Object> flightOptions() {
+        return Arrays.asList(mCachePolicy, mRetryPolicy, mPriority, mParkWhenOffline,
+                mBatchDelivery);
     }
 
-    /** JsonString
-     * String task
+    /**
+     * send the requests of the batch together, over HTTP/2 they share one connection.
+     * the bodies are parsed on background threads, the handler gets every outcome
+     * in one call on the main thread. there is no retry, a failed item is in the result
+     * @param batch
+     * @param handler
      */
-    private static class HttpStreamTask extends
-            AsyncTask<String, Integer, String> {
-
-        Context context;
-        String url;
-        /** 0 is get,1 is post */
-        int type = 0;
-        TaskHandler handler;
-        String json;
-
-        public HttpStreamTask(Context context, String url, int type,
-                              String json, TaskHandler handler) {
-            this.context = context;
-            this.url = url;
-            this.type = type;
-            this.handler = handler;
-            this.json = json;
-        }
-
-        @Override
-        protected void onPreExecute() {
-            if (!NetWorkStatus.networkIsAvailable(context)) {// network is break
-                handler.onNetError();
-            }
-        }
-
-        @Override
-        protected String doInBackground(String... param) {
-            // TODO Auto-generated method stub
-            if (NetWorkStatus.networkIsAvailable(context)) {// network is well
-                String responseStr = null;
-                InputStream is = null;
-                Request request = null;
-                Response response = null;
-                if (type == 0) {// get
-                    try {
-                        request = new Request.Builder().url(url).build();
-                        response = OkHttpUtil.execute(request);
-                        if (response.isSuccessful()) {
-                            is = response.body().byteStream();
-                            responseStr = IOUtils.stream2String(is);
-                            return responseStr;
-                        } else {
-                            handler.onError();
-                            Log.e(TAG, IOUtils.stream2String(is));
-//                            throw new IOException("Unexpected code " + response);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "____get___" + e.toString() + "_____");
-                        handler.onError();
-                    }
-                } else {// post
-                    try {
-                        RequestBody body = RequestBody.create(JSON, json);
-                        request = new Request.Builder()
-                                .url(url)
-                                .post(body)
-                                .build();
-
-                        response = OkHttpUtil.execute(request);
-                        if (response.code() == 200) {
-                            is = response.body().byteStream();
-                            return IOUtils.stream2String(is);
-                        } else {
-                            handler.onError();
-                            Log.e(TAG, IOUtils.stream2String(is));
-                        }
-
-                    } catch (Exception e) {
-
-                        Log.e(TAG, "____post___" + e.toString() + "_____");
-                        handler.onError();
-                    }
-                }
-            }
+    public RequestHandle requestBatch(BatchRequest batch, BatchHandler handler) {
+        if (mContext == null) {
             return null;
         }
-
-        protected void onPostExecute(String result) {
-            if (result == null) {
-                handler.onFail();
-            } else {
-                handler.onSuccess(handler.parseResult(result));
-            }
-            handler.onFinish();
+        if (!NetWorkStatus.networkIsAvailable(mContext)) {// network is break
+            handler.onNetError();
         }
+        BatchCall call = new BatchCall(batch, handler, mCachePolicy, mDispatcher, mTag,
+                mContext.getCacheDir());
+        mDispatcher.register(mTag, call);
+        call.start();
+        return call;
+    }
 
+    /** number of GET requests that were served by a call already in flight */
+    public static long getCoalescedCount() {
+        return sFlights.getCoalescedCount();
     }
 
-    /** post picture
-     * String task
+    /**
+     * post request, the params are sent as a form
+     *
+     * @param url
+     * @param params
+     *            form parameters,if not use null
+     * @param handler
      */
-    private static final String IMGUR_CLIENT_ID = "...";
-    private static final MediaType MEDIA_TYPE_JPG = MediaType.parse("image/jpg");
-
-    private static class HttpMapStreamTask extends
-            AsyncTask<String, Integer, String> {
-
-        Context context;
-        String url;
-        /** 0 is get,1 is post */
-        int type = 0;
-        TaskHandler handler;
-        List<String> json;
-
-        public HttpMapStreamTask(Context context, String url, int type,
-                              List<String> json, TaskHandler handler) {
-            this.context = context;
-            this.url = url;
-            this.type = type;
-            this.handler = handler;
-            this.json = json;
-        }
-
-        @Override
-        protected void onPreExecute() {
-            if (!NetWorkStatus.networkIsAvailable(context)) {// network is break
-                handler.onNetError();
-            }
-        }
-
-        @Override
-        protected String doInBackground(String... param) {
-            // TODO Auto-generated method stub
-            if (NetWorkStatus.networkIsAvailable(context)) {// network is well
-                String responseStr = null;
-                InputStream is = null;
-                Request request = null;
-                Response response = null;
-                if (type == 0) {// get
-                    try {
-                        request = new Request.Builder().url(url).build();
-                        response = OkHttpUtil.execute(request);
-                        if (response.isSuccessful()) {
-                            is = response.body().byteStream();
-                            responseStr = IOUtils.stream2String(is);
-                            return responseStr;
-                        } else {
-                            handler.onError();
-                            Log.e(TAG, IOUtils.stream2String(is));
-//                            throw new IOException("Unexpected code " + response);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "____get___" + e.toString() + "_____");
-                        handler.onError();
-                    }
-                } else {// post
-                    try {
-                        long time=System.currentTimeMillis();
-                        RequestBody requestBody = new MultipartBuilder()
-                                .type(MultipartBuilder.FORM)
-                                .addFormDataPart("storehouseId",json.get(0))
-                                .addFormDataPart("title", json.get(1))
-                                .addFormDataPart("image", time+"pest.jpg",
-                                        RequestBody.create(MEDIA_TYPE_JPG, new File(json.get(2))))
-                                .build();
-
-                        request = new Request.Builder()
-                                .header("Authorization", "Client-ID " + IMGUR_CLIENT_ID)
-                                .url(url)
-                                .post(requestBody)
-                                .build();
-
-                        response = OkHttpUtil.execute(request);
-                        if (response.code() == 200) {
-                            is = response.body().byteStream();
-                            return IOUtils.stream2String(is);
-                        } else {
-                            handler.onError();
-                            Log.e(TAG, IOUtils.stream2String(is));
-                        }
-
-                    } catch (Exception e) {
-
-                        Log.e(TAG, "____post___" + e.toString() + "_____");
-                        handler.onError();
-                    }
-                }
-            }
+    public RequestHandle request(String url, Map<String, String> params,
+                        TaskHandler handler) {
+        if (mContext == null) {
             return null;
         }
-
-        protected void onPostExecute(String result) {
-            if (result == null) {
-                handler.onFail();
-            } else {
-                handler.onSuccess(handler.parseResult(result));
-            }
-            handler.onFinish();
-        }
-
+        return request(HttpRequest.postForm(url, params), handler);
     }
 
     /**
-     * JsonString
-     *  byte task
+     * send the request, the options it does not set are the ones of this manager.
+     * every other request method ends here
+     * @param request
+     * @param handler a {@link TaskByteHandler} gets the body as bytes
      */
-    private static class HttpStreamBytesTask extends AsyncTask<String, Integer, byte[]> {
-
-        Context context;
-        String url;
-        /** 0 is get,1 is post */
-        int type = 0;
-        TaskByteHandler handler;
-        String json;
-
-        public HttpStreamBytesTask(Context context, String url, int type, String json, TaskByteHandler handler) {
-            this.context = context;
-            this.url = url;
-            this.type = type;
-            this.handler = handler;
-            this.json = json;
+    public RequestHandle request(HttpRequest request, TaskHandler handler) {
+        if (mContext == null) {
+            return null;
         }
-
-        @Override
-        protected void onPreExecute() {
-            if (!NetWorkStatus.networkIsAvailable(context)) {// network is break
-                handler.onNetError();
-            }
+        HttpCall call = newCall(request, handler);
+        if (call.resultCache != null && call.deliverCached()) {
+            // fresh, there is nothing to send
+            return call;
         }
+        return enqueue(call, mTag);
+    }
 
-        @Override
-        protected byte[] doInBackground(String... param) {
-            // TODO Auto-generated method stub
-            if (NetWorkStatus.networkIsAvailable(context)) {// network is well
-                InputStream is = null;
-                byte[] responseStr = null;
-                Request request = null;
-                Response response = null;
-                if (type == 0) {// get
-                    try {
-                        request = new Request.Builder().url(url).build();
-                        response = OkHttpUtil.execute(request);
-                        if (response.isSuccessful()) {
-                            is = response.body().byteStream();
-                            return IOUtils.stream2Bytes(is);
-                        } else {
-                            Log.e(TAG, IOUtils.stream2String(is));
-//                            throw new IOException("Unexpected code " + response);
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "____get___" + e.toString() + "_____");
-                    }
-                } else {// post
-                    try {
-                        RequestBody body = RequestBody.create(JSON, json);
-                        request = new Request.Builder()
-                                .url(url)
-                                .post(body)
-                                .build();
-
-                        response = OkHttpUtil.execute(request);
-                        if (response.isSuccessful()) {
-                            is = response.body().byteStream();
-                            return IOUtils.stream2Bytes(is);
-                        } else {
-                            Log.e(TAG, IOUtils.stream2String(is));
-                        }
-
-                    } catch (Exception e) {
-                        Log.e(TAG, "____post___" + e.toString() + "_____");
-                    }
-                }
-            }
-            return null;
+    private HttpCall newCall(HttpRequest request, TaskHandler handler) {
+        HttpCall call = new HttpCall(mContext, request, handler,
+                request.priority != null ? request.priority : mPriority);
+        call.cachePolicy = request.cachePolicy != null ? request.cachePolicy : mCachePolicy;
+        call.retryPolicy = request.hasRetryPolicy ? request.retryPolicy : mRetryPolicy;
+        call.parkWhenOffline = mParkWhenOffline;
+        call.batchDelivery = mBatchDelivery;
+        long ttl = request.resultTtlMillis >= 0 ? request.resultTtlMillis : mResultTtlMillis;
+        if (ttl >= 0 && "GET".equals(request.method)) {
+            call.resultCache = ResultCache.get();
+            call.resultTtlMillis = ttl;
         }
+        return call;
+    }
 
-        private int getShort(byte[] data) {
-            return (int)((data[0]<<8) | data[1]&0xFF);
-        }
+    private RequestHandle enqueue(DispatchTask<?> task, Object tag) {
+        task.tag = tag;
+        mDispatcher.register(tag, task);
+        mDispatcher.enqueue(task);
+        return task;
+    }
 
-        protected void onPostExecute(byte[] result) {
-            if (result == null) {
-                handler.onFail();
-            } else {
-                handler.onSuccess(handler.parseResult(result));
-            }
-            handler.onFinish();
-        }
+    /**
+     * cancel every request made by a manager with the tag, see {@link #withTag(Object)}
+     * @param tag
+     */
+    public void cancelAll(Object tag) {
+        mDispatcher.cancelAll(tag);
     }
 
-}
+    /** post picture
+     * String task
+     */
+    private static final String IMGUR_CLIENT_ID = "...";
+    private static final MediaType MEDIA_TYPE_JPG = MediaType.parse("image/jpg");
+
+    /** retries of a resumable upload if the manager has no retry policy */
+    public static final RetryPolicy DEFAULT_UPLOAD_RETRY = new RetryPolicy(5, 1000);
+
+}
\ No newline at end of file
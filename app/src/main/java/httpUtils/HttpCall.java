@@ -0,0 +1,281 @@
+package httpUtils;
+
+import android.content.Context;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * runs a {@link HttpRequest} of {@link HttpAsyncTaskManager}. the network check,
+ * the retry, the timeout and the reading of the body are done here for every kind
+ * of request
+ */
+class HttpCall extends DispatchTask<Object> {
+
+    /** the result of a request that went to the {@link OfflineWriteQueue} */
+    private static final Object DEFERRED = new Object();
+
+    private final Context mContext;
+    private final HttpRequest mRequest;
+    private final TaskHandler mHandler;
+    private volatile boolean mTimedOut;
+    /** set by the manager for a GET whose result is kept, see {@link HttpRequest#setResultTtl} */
+    ResultCache resultCache;
+    long resultTtlMillis;
+    private String mResultKey;
+    /** the result delivered from the cache, this call only refreshes it */
+    private ResultCache.Entry mCached;
+    private long mBodyBytes = -1;
+
+    HttpCall(Context context, HttpRequest request, TaskHandler handler,
+             RequestDispatcher.Priority priority) {
+        super(request.url, priority);
+        this.mContext = context;
+        this.mRequest = request;
+        this.mHandler = handler;
+    }
+
+    @Override
+    protected Request.Builder newRequest() {
+        return super.newRequest().headers(mRequest.headers.build());
+    }
+
+    /**
+     * deliver the kept result of the request, if there is one
+     * @return true if it is fresh, the request is not sent
+     */
+    boolean deliverCached() {
+        mResultKey = ResultCache.key(url, mRequest.headers.build().toString(), mHandler);
+        final ResultCache.Entry entry = resultCache.lookup(mResultKey);
+        if (entry == null) {
+            return false;
+        }
+        mCached = entry;
+        deliver(new Runnable() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void run() {
+                if (!isCanceled()) {
+                    mHandler.onSuccess(entry.value);
+                    mHandler.onFinish();
+                }
+            }
+        });
+        return entry.isFresh();
+    }
+
+    @Override
+    protected void onPreExecute() {
+        if (mCached == null && !parkWhenOffline && mRequest.idempotencyKey == null
+                && !NetWorkStatus.networkIsAvailable(mContext)) {// network is break
+            mHandler.onNetError();
+        }
+    }
+
+    @Override
+    protected Object doInBackground() {
+        if (!NetWorkStatus.networkIsAvailable(mContext)) {
+            return mRequest.idempotencyKey != null ? defer() : null;
+        }
+        String method = mRequest.method;
+        ScheduledFuture<?> deadline = null;
+        if (mRequest.timeoutMillis > 0) {
+            mTimedOut = false;
+            deadline = dispatcher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mTimedOut = true;
+                    OkHttpUtil.cancel(HttpCall.this);
+                }
+            }, mRequest.timeoutMillis);
+        }
+        try {
+            Response response = execute();
+            if (response.isSuccessful()) {
+                return read(response);
+            }
+            IOUtils.closeStream(response.body());
+            if (!retryLater(method, response.code())) {
+                onError();
+            }
+        } catch (Exception e) {
+            if (isCanceled() || isPreempted()) {
+                // the call was aborted, a parser may have wrapped the IOException of the abort
+                retryLater(method, RetryPolicy.NO_RESPONSE);
+                return null;
+            }
+            failure = mTimedOut ? new InterruptedIOException("timed out after "
+                    + mRequest.timeoutMillis + " ms: " + e) : e;
+            if (e instanceof BodyTooLargeException || e instanceof LocalIOException) {
+                // the same again would fail the same way
+                onError();
+                return null;
+            }
+            // a timeout while parsing is no response either
+            boolean noResponse = e instanceof IOException || mTimedOut;
+            if (!noResponse || !retryLater(method, RetryPolicy.NO_RESPONSE)) {
+                if (noResponse && mRequest.idempotencyKey != null) {
+                    return defer();
+                }
+                onError();
+            }
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+        }
+        return null;
+    }
+
+    /** a failed refresh of a cached result is not reported */
+    private void onError() {
+        if (mCached == null) {
+            mHandler.onError();
+        }
+    }
+
+    /** keep the request for when the network is back */
+    private Object defer() {
+        if (OfflineWriteQueue.get(mContext).enqueue(mRequest)) {
+            return DEFERRED;
+        }
+        mHandler.onError();
+        return null;
+    }
+
+    private Response execute() throws IOException {
+        if (mRequest.resumable != null) {
+            return mRequest.resumable.execute(this);
+        }
+        Request.Builder builder = newRequest();
+        if (mRequest.upload != null) {
+            mRequest.upload.applyTo(builder);
+        } else {
+            builder.method(mRequest.method, mRequest.body);
+        }
+        Request request = builder.build();
+        if ("GET".equals(mRequest.method)) {
+            return OkHttpUtil.execute(request, cachePolicy);
+        }
+        return OkHttpUtil.execute(request);
+    }
+
+    /** the result of a {@link ReaderTaskHandler}, parsed on the worker thread */
+    static class ParsedResult {
+        final Object value;
+
+        ParsedResult(Object value) {
+            this.value = value;
+        }
+    }
+
+    private Object read(Response response) throws IOException {
+        ResponseBody body = response.body();
+        mBodyBytes = body.contentLength();
+        return read(body, mHandler, mRequest.maxMemoryBytes, mContext.getCacheDir());
+    }
+
+    /**
+     * read the body of a successful response, for a call or an item of a {@link BatchCall}:
+     * a {@link TaskByteHandler} gets the bytes, a {@link ReaderTaskHandler} parses it from
+     * the stream, a {@link SourceTaskHandler} from memory or a temp file, other handlers
+     * get the body String
+     * @param body
+     * @param handler null for the String
+     * @param max the bytes read into memory, see {@link HttpRequest#setMaxMemoryBytes}
+     * @param cacheDir where the body of a {@link SourceTaskHandler} goes if it is larger
+     * @return a {@link ParsedResult}, the byte[] or the body String
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    static Object read(ResponseBody body, TaskHandler handler, long max, File cacheDir)
+            throws IOException {
+        if (handler instanceof TaskByteHandler) {
+            return IOUtils.stream2Bytes(body.byteStream(), body.contentLength(), max);
+        }
+        if (handler instanceof SourceTaskHandler) {
+            BodySource source = IOUtils.stream2Source(body.byteStream(), body.contentLength(),
+                    max, cacheDir);
+            try {
+                long start = System.nanoTime();
+                Object value = ((SourceTaskHandler) handler).parseResult(source);
+                ParseStats.get().recordWorker(System.nanoTime() - start);
+                return new ParsedResult(value);
+            } catch (IOException e) {
+                // the body was read whole, this is not the network
+                throw new LocalIOException(e);
+            } finally {
+                source.delete();
+            }
+        }
+        MediaType contentType = body.contentType();
+        Charset charset = contentType != null ? contentType.charset(IOUtils.UTF_8) : IOUtils.UTF_8;
+        if (handler instanceof SingleFlight.Flight
+                && !((SingleFlight.Flight) handler).parsesWhileReading()) {
+            // the String the members parse, with the limit of a plain handler
+            return new ParsedResult(IOUtils.stream2String(body.byteStream(), body.contentLength(),
+                    charset, max));
+        }
+        if (handler instanceof ReaderTaskHandler) {
+            Reader reader = IOUtils.stream2Reader(body.byteStream(), charset);
+            try {
+                if (handler instanceof SingleFlight.Flight) {
+                    // times its own parse
+                    return new ParsedResult(((SingleFlight.Flight) handler).parseResult(reader));
+                }
+                long start = System.nanoTime();
+                Object value = ((ReaderTaskHandler) handler).parseResult(reader);
+                ParseStats.get().recordWorker(System.nanoTime() - start);
+                return new ParsedResult(value);
+            } finally {
+                IOUtils.closeStream(reader);
+            }
+        }
+        return IOUtils.stream2String(body.byteStream(), body.contentLength(), charset, max);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void onPostExecute(Object result) {
+        if (result == null) {
+            if (mCached != null) {
+                // the delivered result stays, the handler was finished with it
+                return;
+            }
+            mHandler.onFail();
+        } else if (result == DEFERRED) {
+            mHandler.onDeferred();
+        } else {
+            Object value;
+            if (result instanceof ParsedResult) {
+                value = ((ParsedResult) result).value;
+            } else if (result instanceof byte[]) {
+                value = ((TaskByteHandler) mHandler).parseResult((byte[]) result);
+            } else {
+                long start = System.nanoTime();
+                value = mHandler.parseResult((String) result);
+                ParseStats.get().recordMainThread(System.nanoTime() - start);
+                if (mBodyBytes < 0) {
+                    mBodyBytes = ((String) result).length();
+                }
+            }
+            if (mResultKey != null) {
+                resultCache.put(mResultKey, value, mBodyBytes, resultTtlMillis);
+                if (mCached != null && !resultCache.changed(mCached.value, value)) {
+                    return;
+                }
+            }
+            mHandler.onSuccess(value);
+        }
+        mHandler.onFinish();
+    }
+}
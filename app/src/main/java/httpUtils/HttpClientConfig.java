@@ -0,0 +1,222 @@
+package httpUtils;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * settings of an OkHttpClient, for {@link OkHttpUtil#configure} and
+ * {@link OkHttpUtil#newClient}. immutable, made by a {@link Builder}:
+ * <pre>
+ * OkHttpUtil.configure(new HttpClientConfig.Builder()
+ *         .readTimeout(15, TimeUnit.SECONDS)
+ *         .connectionPool(8, 2, TimeUnit.MINUTES)
+ *         .build());
+ * </pre>
+ * the dispatcher limits apply to asynchronous calls ({@link OkHttpUtil#enqueue}),
+ * the tasks of {@link HttpAsyncTaskManager} are limited by their {@link RequestDispatcher}
+ */
+public class HttpClientConfig {
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 30 * 1000;
+    public static final long DEFAULT_READ_TIMEOUT_MS = 30 * 1000;
+    public static final long DEFAULT_WRITE_TIMEOUT_MS = 10 * 1000;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_MS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    final long connectTimeoutMs;
+    final long readTimeoutMs;
+    final long writeTimeoutMs;
+    final int maxIdleConnections;
+    final long keepAliveMs;
+    final List<Protocol> protocols;
+    final int maxRequests;
+    final int maxRequestsPerHost;
+    final boolean retryOnConnectionFailure;
+    final boolean followRedirects;
+
+    private HttpClientConfig(Builder builder) {
+        this.connectTimeoutMs = builder.connectTimeoutMs;
+        this.readTimeoutMs = builder.readTimeoutMs;
+        this.writeTimeoutMs = builder.writeTimeoutMs;
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveMs = builder.keepAliveMs;
+        this.protocols = Collections.unmodifiableList(new ArrayList<Protocol>(builder.protocols));
+        this.maxRequests = builder.maxRequests;
+        this.maxRequestsPerHost = builder.maxRequestsPerHost;
+        this.retryOnConnectionFailure = builder.retryOnConnectionFailure;
+        this.followRedirects = builder.followRedirects;
+    }
+
+    /** a builder starting from these settings */
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    /** a pool of the configured size, for the shared client */
+    ConnectionPool newConnectionPool() {
+        return new ConnectionPool(maxIdleConnections, keepAliveMs);
+    }
+
+    /** true if a pool made by {@link #newConnectionPool()} would be the same as the other's */
+    boolean samePool(HttpClientConfig other) {
+        return other != null && maxIdleConnections == other.maxIdleConnections
+                && keepAliveMs == other.keepAliveMs;
+    }
+
+    /** set everything but the connection pool on the client */
+    void applyTo(OkHttpClient client) {
+        client.setConnectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS);
+        client.setReadTimeout(readTimeoutMs, TimeUnit.MILLISECONDS);
+        client.setWriteTimeout(writeTimeoutMs, TimeUnit.MILLISECONDS);
+        client.setProtocols(protocols);
+        client.setRetryOnConnectionFailure(retryOnConnectionFailure);
+        client.setFollowRedirects(followRedirects);
+        client.getDispatcher().setMaxRequests(maxRequests);
+        client.getDispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMs;
+    }
+
+    public long getReadTimeoutMillis() {
+        return readTimeoutMs;
+    }
+
+    public long getWriteTimeoutMillis() {
+        return writeTimeoutMs;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMs;
+    }
+
+    public List<Protocol> getProtocols() {
+        return protocols;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public static class Builder {
+
+        private long connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+        private long readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
+        private long writeTimeoutMs = DEFAULT_WRITE_TIMEOUT_MS;
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMs = DEFAULT_KEEP_ALIVE_MS;
+        private List<Protocol> protocols = Arrays.asList(Protocol.HTTP_2, Protocol.SPDY_3, Protocol.HTTP_1_1);
+        private int maxRequests = DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private boolean retryOnConnectionFailure = true;
+        private boolean followRedirects = true;
+
+        public Builder() {
+        }
+
+        private Builder(HttpClientConfig config) {
+            this.connectTimeoutMs = config.connectTimeoutMs;
+            this.readTimeoutMs = config.readTimeoutMs;
+            this.writeTimeoutMs = config.writeTimeoutMs;
+            this.maxIdleConnections = config.maxIdleConnections;
+            this.keepAliveMs = config.keepAliveMs;
+            this.protocols = config.protocols;
+            this.maxRequests = config.maxRequests;
+            this.maxRequestsPerHost = config.maxRequestsPerHost;
+            this.retryOnConnectionFailure = config.retryOnConnectionFailure;
+            this.followRedirects = config.followRedirects;
+        }
+
+        /** 0 for no timeout */
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        /** the longest wait for the next bytes of a response, 0 for no timeout */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        /** the longest wait to write the next bytes of a request, 0 for no timeout */
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param maxIdleConnections idle connections kept per address
+         * @param keepAlive how long an idle connection is kept
+         * @param unit
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+            if (maxIdleConnections < 0) {
+                throw new IllegalArgumentException("maxIdleConnections < 0");
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMs = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /** the protocols offered to the server, must contain HTTP_1_1 */
+        public Builder protocols(Protocol... protocols) {
+            List<Protocol> list = Arrays.asList(protocols);
+            if (!list.contains(Protocol.HTTP_1_1)) {
+                throw new IllegalArgumentException("protocols must contain HTTP_1_1: " + list);
+            }
+            this.protocols = list;
+            return this;
+        }
+
+        /** asynchronous calls running at once, more are queued */
+        public Builder maxRequests(int maxRequests) {
+            if (maxRequests < 1) {
+                throw new IllegalArgumentException("max < 1: " + maxRequests);
+            }
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /** asynchronous calls running at once against one host, more are queued */
+        public Builder maxRequestsPerHost(int maxRequestsPerHost) {
+            if (maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException("max < 1: " + maxRequestsPerHost);
+            }
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        public Builder retryOnConnectionFailure(boolean retry) {
+            this.retryOnConnectionFailure = retry;
+            return this;
+        }
+
+        public Builder followRedirects(boolean follow) {
+            this.followRedirects = follow;
+            return this;
+        }
+
+        public HttpClientConfig build() {
+            return new HttpClientConfig(this);
+        }
+    }
+}
@@ -0,0 +1,663 @@
+package httpUtils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Utils.ByteUtil;
+
+/**
+ * downloads files straight to disk through a fixed buffer, the body is never
+ * held in memory. a download that broke off continues with a Range request
+ * where it stopped, also after a restart of the app, and a large file is split
+ * into segments that are downloaded in parallel
+ */
+public class HttpDownloadManager {
+
+    private static final String TAG = HttpDownloadManager.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final RetryPolicy DEFAULT_RETRY = new RetryPolicy(5, 1000);
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    /** the state of a download is saved after this many bytes of a segment */
+    private static final long SAVE_INTERVAL = 1024 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".part.state";
+
+    private static RequestDispatcher sDispatcher;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Context mContext;
+    private final RequestDispatcher mDispatcher;
+
+    public HttpDownloadManager(Context context) {
+        this(context, getDefaultDispatcher());
+    }
+
+    public HttpDownloadManager(Context context, RequestDispatcher dispatcher) {
+        this.mContext = context.getApplicationContext() != null
+                ? context.getApplicationContext() : context;
+        this.mDispatcher = dispatcher;
+        NetworkMonitor.get(mContext);
+    }
+
+    /**
+     * downloads have their own dispatcher, a long transfer must not take the
+     * per host slots of the api calls in {@link RequestDispatcher#getDefault()}
+     */
+    public static synchronized RequestDispatcher getDefaultDispatcher() {
+        if (sDispatcher == null) {
+            sDispatcher = new RequestDispatcher(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+        }
+        return sDispatcher;
+    }
+
+    /**
+     * download the url of the request to its file
+     * @param request
+     * @param handler
+     * @return cancel keeps the .part file, downloading the same request again continues it
+     */
+    public RequestHandle download(DownloadRequest request, DownloadHandler handler) {
+        Download download = new Download(request, handler);
+        if (!NetWorkStatus.networkIsAvailable(mContext)) {// network is break
+            handler.onNetError();
+            download.fail(DownloadHandler.ERROR_NETWORK);
+            return download;
+        }
+        download.submit(new ProbeTask(download));
+        return download;
+    }
+
+    /** a byte range of the file, end is -1 while the length is not known */
+    private static class Segment {
+        final long start;
+        volatile long end;
+        /** the next byte to download */
+        volatile long pos;
+
+        Segment(long start, long end, long pos) {
+            this.start = start;
+            this.end = end;
+            this.pos = pos;
+        }
+
+        boolean isDone() {
+            return end >= 0 && pos > end;
+        }
+    }
+
+    /** the file could not be written, retrying does not help */
+    private static class FileException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FileException(IOException cause) {
+            super(cause.toString());
+            initCause(cause);
+        }
+    }
+
+    private class Download implements RequestHandle {
+
+        final DownloadRequest request;
+        final DownloadHandler handler;
+        final File partFile;
+        final File stateFile;
+        /** Content-Length of the file, -1 if the server does not say */
+        volatile long length = -1;
+        /** ETag or Last-Modified, a .part file of another version is not continued */
+        volatile String validator;
+        volatile Segment[] segments;
+        private final List<DispatchTask<?>> mTasks = new ArrayList<DispatchTask<?>>();
+        private final AtomicLong mDownloaded = new AtomicLong();
+        private long mLastReport;
+        private int mRemaining;
+        private boolean mFinished;
+        private volatile boolean mCanceled;
+
+        Download(DownloadRequest request, DownloadHandler handler) {
+            this.request = request;
+            this.handler = handler;
+            this.partFile = new File(request.file.getPath() + PART_SUFFIX);
+            this.stateFile = new File(request.file.getPath() + STATE_SUFFIX);
+        }
+
+        void submit(DispatchTask<?> task) {
+            synchronized (this) {
+                if (mCanceled || mFinished) {
+                    return;
+                }
+                mTasks.add(task);
+            }
+            task.retryPolicy = request.retryPolicy != null ? request.retryPolicy : DEFAULT_RETRY;
+            mDispatcher.enqueue(task);
+        }
+
+        /** a request for the raw bytes of the file, kept out of the http cache */
+        Request.Builder newRequest(DispatchTask<?> task) {
+            return task.newRequest()
+                    .header("Accept-Encoding", "identity")
+                    .header("Cache-Control", "no-store");
+        }
+
+        /**
+         * worker: split the file into segments, or continue the segments of the .part file
+         * @param ranges the server accepts Range requests
+         */
+        void plan(boolean ranges) {
+            if (request.expectedSize >= 0 && length >= 0 && length != request.expectedSize) {
+                Log.e(TAG, request.url + " has " + length + " bytes, expected " + request.expectedSize);
+                fail(DownloadHandler.ERROR_VERIFY);
+                return;
+            }
+            Segment[] saved = ranges ? loadState() : null;
+            long done = 0;
+            if (saved != null) {
+                segments = saved;
+                for (Segment segment : saved) {
+                    done += segment.pos - segment.start;
+                }
+            } else {
+                segments = split(ranges);
+                partFile.delete();
+                stateFile.delete();
+            }
+            long size = length >= 0 ? length : request.expectedSize;
+            if (size > 0 && !hasSpace(size - done)) {
+                fail(DownloadHandler.ERROR_NO_SPACE);
+                return;
+            }
+            try {
+                File dir = partFile.getParentFile();
+                if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("cannot create " + dir);
+                }
+                if (saved == null && length > 0) {
+                    RandomAccessFile out = new RandomAccessFile(partFile, "rw");
+                    try {
+                        out.setLength(length);
+                    } finally {
+                        IOUtils.closeStream(out);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "cannot create " + partFile, e);
+                fail(DownloadHandler.ERROR_FILE);
+                return;
+            }
+            mDownloaded.set(done);
+            saveState(null);
+            List<Segment> pending = new ArrayList<Segment>();
+            for (Segment segment : segments) {
+                if (!segment.isDone()) {
+                    pending.add(segment);
+                }
+            }
+            synchronized (this) {
+                mRemaining = pending.size();
+            }
+            if (pending.isEmpty()) {
+                complete();
+                return;
+            }
+            for (Segment segment : pending) {
+                submit(new SegmentTask(this, segment, ranges));
+            }
+        }
+
+        private Segment[] split(boolean ranges) {
+            int count = ranges && length >= request.segmentThreshold ? request.segments : 1;
+            if (length < 0 || count == 1) {
+                return new Segment[]{new Segment(0, length >= 0 ? length - 1 : -1, 0)};
+            }
+            Segment[] split = new Segment[count];
+            long size = length / count;
+            for (int i = 0; i < count; i++) {
+                long start = i * size;
+                long end = i == count - 1 ? length - 1 : start + size - 1;
+                split[i] = new Segment(start, end, start);
+            }
+            return split;
+        }
+
+        private boolean hasSpace(long needed) {
+            File dir = request.file.getAbsoluteFile().getParentFile();
+            try {
+                // 0 if the partition is unknown
+                long free = dir.getUsableSpace();
+                if (free > 0 && needed > free) {
+                    Log.e(TAG, request.url + " needs " + needed + " bytes, " + free + " free");
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                // not allowed to look, let the writes find out
+                Log.e(TAG, "cannot get the free space of " + dir, e);
+            }
+            return true;
+        }
+
+        /** the segments of the .part file if it belongs to the same version of the file */
+        private Segment[] loadState() {
+            if (length < 0 || validator == null || !partFile.exists() || !stateFile.exists()) {
+                return null;
+            }
+            Properties state = new Properties();
+            InputStream in = null;
+            try {
+                in = new FileInputStream(stateFile);
+                state.load(in);
+                if (!request.url.equals(state.getProperty("url"))
+                        || length != Long.parseLong(state.getProperty("length"))
+                        || !validator.equals(state.getProperty("validator"))) {
+                    return null;
+                }
+                int count = Integer.parseInt(state.getProperty("segments"));
+                Segment[] loaded = new Segment[count];
+                for (int i = 0; i < count; i++) {
+                    loaded[i] = new Segment(Long.parseLong(state.getProperty(i + ".start")),
+                            Long.parseLong(state.getProperty(i + ".end")),
+                            Long.parseLong(state.getProperty(i + ".pos")));
+                }
+                return loaded;
+            } catch (IOException e) {
+                return null;
+            } catch (RuntimeException e) {
+                // a state file cut off by a crash
+                return null;
+            } finally {
+                IOUtils.closeStream(in);
+            }
+        }
+
+        /**
+         * remember how far each segment got. the positions are taken before the
+         * .part file is synced, so they never point past bytes that are on disk
+         * @param out a stream of the .part file to sync, or null
+         */
+        synchronized void saveState(RandomAccessFile out) {
+            Segment[] current = segments;
+            if (current == null || length < 0 || validator == null) {
+                return;
+            }
+            Properties state = new Properties();
+            state.setProperty("url", request.url);
+            state.setProperty("length", String.valueOf(length));
+            state.setProperty("validator", validator);
+            state.setProperty("segments", String.valueOf(current.length));
+            for (int i = 0; i < current.length; i++) {
+                state.setProperty(i + ".start", String.valueOf(current[i].start));
+                state.setProperty(i + ".end", String.valueOf(current[i].end));
+                state.setProperty(i + ".pos", String.valueOf(current[i].pos));
+            }
+            File tmp = new File(stateFile.getPath() + ".tmp");
+            OutputStream os = null;
+            try {
+                if (out != null) {
+                    out.getFD().sync();
+                }
+                os = new FileOutputStream(tmp);
+                state.store(os, null);
+                IOUtils.closeStream(os);
+                os = null;
+                if (!tmp.renameTo(stateFile)) {
+                    throw new IOException("cannot rename " + tmp);
+                }
+            } catch (IOException e) {
+                // only costs the resume, the download goes on
+                Log.e(TAG, "cannot save " + stateFile, e);
+            } finally {
+                IOUtils.closeStream(os);
+            }
+        }
+
+        /** worker: bytes were written, tell the listener at most every MIN_INTERVAL_MS */
+        void progress(long bytes) {
+            final long downloaded = mDownloaded.addAndGet(bytes);
+            final ProgressListener listener = request.listener;
+            if (listener == null) {
+                return;
+            }
+            long now = SystemClock.uptimeMillis();
+            synchronized (this) {
+                if (now - mLastReport < ProgressRequestBody.MIN_INTERVAL_MS) {
+                    return;
+                }
+                mLastReport = now;
+            }
+            final long total = total();
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCanceled) {
+                        listener.onProgress(downloaded, total);
+                    }
+                }
+            });
+        }
+
+        private long total() {
+            return length >= 0 ? length : request.expectedSize;
+        }
+
+        /** worker: a segment has all its bytes */
+        void segmentDone() {
+            boolean last;
+            synchronized (this) {
+                last = --mRemaining == 0;
+            }
+            if (last) {
+                complete();
+            }
+        }
+
+        /** worker: verify the .part file and move it to the file */
+        private void complete() {
+            long size = partFile.length();
+            if ((length >= 0 && size != length)
+                    || (request.expectedSize >= 0 && size != request.expectedSize)) {
+                Log.e(TAG, request.url + ": " + size + " bytes written");
+                discard();
+                fail(DownloadHandler.ERROR_VERIFY);
+                return;
+            }
+            if (request.checksum != null) {
+                try {
+                    String digest = digest(partFile, request.checksumAlgorithm);
+                    if (!digest.equalsIgnoreCase(request.checksum)) {
+                        Log.e(TAG, request.url + ": checksum " + digest + ", expected " + request.checksum);
+                        discard();
+                        fail(DownloadHandler.ERROR_VERIFY);
+                        return;
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "cannot verify " + partFile, e);
+                    fail(DownloadHandler.ERROR_FILE);
+                    return;
+                }
+            }
+            stateFile.delete();
+            request.file.delete();
+            if (!partFile.renameTo(request.file)) {
+                Log.e(TAG, "cannot rename " + partFile + " to " + request.file);
+                fail(DownloadHandler.ERROR_FILE);
+                return;
+            }
+            synchronized (this) {
+                if (mFinished || mCanceled) {
+                    return;
+                }
+                mFinished = true;
+            }
+            final long total = size;
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCanceled) {
+                        return;
+                    }
+                    if (request.listener != null) {
+                        request.listener.onProgress(total, total);
+                    }
+                    handler.onSuccess(request.file);
+                    handler.onFinish();
+                }
+            });
+        }
+
+        /** the bytes of the .part file are wrong, do not continue it */
+        void discard() {
+            synchronized (this) {
+                segments = null;
+            }
+            partFile.delete();
+            stateFile.delete();
+        }
+
+        /** stop the other segments and report the failure once */
+        void fail(final int reason) {
+            List<DispatchTask<?>> tasks;
+            synchronized (this) {
+                if (mFinished || mCanceled) {
+                    return;
+                }
+                mFinished = true;
+                tasks = new ArrayList<DispatchTask<?>>(mTasks);
+            }
+            for (DispatchTask<?> task : tasks) {
+                task.cancel();
+            }
+            saveState(null);
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCanceled) {
+                        handler.onFail(reason);
+                        handler.onFinish();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            List<DispatchTask<?>> tasks;
+            synchronized (this) {
+                if (mCanceled) {
+                    return;
+                }
+                mCanceled = true;
+                tasks = new ArrayList<DispatchTask<?>>(mTasks);
+            }
+            for (DispatchTask<?> task : tasks) {
+                task.cancel();
+            }
+            saveState(null);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+    }
+
+    private static String digest(File file, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("no " + algorithm);
+        }
+        InputStream in = new FileInputStream(file);
+        byte[] buf = ByteArrayPool.get().getBuf(BUFFER_SIZE);
+        try {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                digest.update(buf, 0, n);
+            }
+        } finally {
+            ByteArrayPool.get().returnBuf(buf);
+            IOUtils.closeStream(in);
+        }
+        return ByteUtil.bytesToHexString(digest.digest());
+    }
+
+    /** asks the server for the length and version of the file and whether it serves ranges */
+    private static class ProbeTask extends DispatchTask<Void> {
+
+        final Download download;
+
+        ProbeTask(Download download) {
+            super(download.request.url, RequestDispatcher.Priority.NORMAL);
+            this.download = download;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            Response response;
+            try {
+                response = OkHttpUtil.execute(download.newRequest(this).head().build());
+            } catch (IOException e) {
+                failure = e;
+                if (!retryLater("HEAD", RetryPolicy.NO_RESPONSE)) {
+                    download.fail(DownloadHandler.ERROR_NETWORK);
+                }
+                return null;
+            }
+            IOUtils.closeStream(response.body());
+            boolean ranges = false;
+            if (response.isSuccessful()) {
+                try {
+                    download.length = Long.parseLong(response.header("Content-Length", "-1"));
+                } catch (NumberFormatException e) {
+                    download.length = -1;
+                }
+                ranges = download.length > 0
+                        && "bytes".equalsIgnoreCase(response.header("Accept-Ranges"));
+                String validator = response.header("ETag");
+                download.validator = validator != null ? validator : response.header("Last-Modified");
+            } else if (retryLater("HEAD", response.code())) {
+                return null;
+            }
+            // without a HEAD answer the file is downloaded in one piece, the GET tells the rest
+            download.plan(ranges);
+            return null;
+        }
+    }
+
+    /** downloads one segment into its place in the .part file */
+    private static class SegmentTask extends DispatchTask<Void> {
+
+        final Download download;
+        final Segment segment;
+        final boolean ranged;
+
+        SegmentTask(Download download, Segment segment, boolean ranged) {
+            super(download.request.url, RequestDispatcher.Priority.NORMAL);
+            this.download = download;
+            this.segment = segment;
+            this.ranged = ranged;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            Response response = null;
+            RandomAccessFile out = null;
+            try {
+                Request.Builder builder = download.newRequest(this);
+                if (ranged) {
+                    builder.header("Range", "bytes=" + segment.pos + "-" + segment.end);
+                    if (download.validator != null) {
+                        builder.header("If-Range", download.validator);
+                    }
+                } else if (segment.pos > 0) {
+                    // the server ignores ranges, start over
+                    download.progress(-segment.pos);
+                    segment.pos = 0;
+                }
+                response = OkHttpUtil.execute(builder.build());
+                if (!response.isSuccessful()) {
+                    if (!retryLater("GET", response.code())) {
+                        download.fail(DownloadHandler.ERROR_HTTP);
+                    }
+                    return null;
+                }
+                if (ranged && response.code() != 206) {
+                    // the file changed on the server since the .part file was started, the
+                    // .part file is dropped so the next download of it starts from the beginning
+                    Log.e(TAG, download.request.url + " changed on the server, the download fails");
+                    download.discard();
+                    download.fail(DownloadHandler.ERROR_VERIFY);
+                    return null;
+                }
+                try {
+                    out = new RandomAccessFile(download.partFile, "rw");
+                    out.seek(segment.pos);
+                } catch (IOException e) {
+                    throw new FileException(e);
+                }
+                copy(response.body().byteStream(), out);
+                if (isCanceled()) {
+                    return null;
+                }
+                if (segment.end < 0) {
+                    // the length was not known, the end of the body is the end of the file
+                    segment.end = segment.pos - 1;
+                } else if (segment.pos <= segment.end) {
+                    throw new EOFException("segment ended at " + segment.pos + ", not " + segment.end);
+                }
+                download.segmentDone();
+            } catch (FileException e) {
+                failure = e;
+                download.fail(DownloadHandler.ERROR_FILE);
+            } catch (IOException e) {
+                failure = e;
+                download.saveState(out);
+                if (!retryLater("GET", RetryPolicy.NO_RESPONSE)) {
+                    download.fail(DownloadHandler.ERROR_NETWORK);
+                }
+            } finally {
+                if (response != null) {
+                    IOUtils.closeStream(response.body());
+                }
+                IOUtils.closeStream(out);
+            }
+            return null;
+        }
+
+        /** stream the body to the file, up to the end of the segment */
+        private void copy(InputStream in, RandomAccessFile out) throws IOException {
+            byte[] buf = ByteArrayPool.get().getBuf(BUFFER_SIZE);
+            try {
+                long unsaved = 0;
+                while (!isCanceled()) {
+                    int max = buf.length;
+                    if (segment.end >= 0) {
+                        max = (int) Math.min(max, segment.end - segment.pos + 1);
+                        if (max == 0) {
+                            break;
+                        }
+                    }
+                    int n = in.read(buf, 0, max);
+                    if (n == -1) {
+                        break;
+                    }
+                    try {
+                        out.write(buf, 0, n);
+                    } catch (IOException e) {
+                        throw new FileException(e);
+                    }
+                    segment.pos += n;
+                    download.progress(n);
+                    unsaved += n;
+                    if (unsaved >= SAVE_INTERVAL) {
+                        download.saveState(out);
+                        unsaved = 0;
+                    }
+                }
+            } finally {
+                ByteArrayPool.get().returnBuf(buf);
+            }
+        }
+    }
+}
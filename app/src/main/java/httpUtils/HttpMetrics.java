@@ -0,0 +1,199 @@
+package httpUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import Utils.LogUtil;
+
+/**
+ * where the time of the calls of {@link OkHttpUtil} goes: DNS, connect, TLS,
+ * time to first byte and the whole call, plus the bytes sent and received,
+ * per host and per endpoint. an endpoint is the method, host and path with the
+ * ids taken out, e.g. {@code GET api.example.com/user/{id}}.
+ * recording costs a few counters per call, it can stay on in release builds
+ */
+public class HttpMetrics {
+
+    private static final String TAG = HttpMetrics.class.getSimpleName();
+
+    /** more endpoints than this are counted as {@code <method> <host>/*} */
+    public static final int MAX_ENDPOINTS = 200;
+
+    private static final HttpMetrics sInstance = new HttpMetrics();
+
+    private final Map<String, EndpointStats> mHosts = new HashMap<String, EndpointStats>();
+    private final Map<String, EndpointStats> mEndpoints = new HashMap<String, EndpointStats>();
+    private volatile boolean mEnabled = true;
+    private ScheduledThreadPoolExecutor mLogTimer;
+    private ScheduledFuture<?> mLogTask;
+
+    public static HttpMetrics get() {
+        return sInstance;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    void record(CallMetrics call) {
+        if (!mEnabled) {
+            return;
+        }
+        stats(call.host, false).record(call);
+        stats(endpoint(call.method, call.host, call.path), true).record(call);
+    }
+
+    private synchronized EndpointStats stats(String key, boolean endpoint) {
+        Map<String, EndpointStats> map = endpoint ? mEndpoints : mHosts;
+        EndpointStats stats = map.get(key);
+        if (stats == null) {
+            if (endpoint && map.size() >= MAX_ENDPOINTS) {
+                key = key.substring(0, key.indexOf('/') + 1) + '*';
+                stats = map.get(key);
+            }
+            if (stats == null) {
+                stats = new EndpointStats();
+                map.put(key, stats);
+            }
+        }
+        return stats;
+    }
+
+    /** the path segments that are numbers, hex ids or uuids become {id} */
+    static String endpoint(String method, String host, String path) {
+        StringBuilder sb = new StringBuilder(method).append(' ').append(host);
+        int start = 1;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            String segment = path.substring(start, end);
+            sb.append('/').append(isId(segment) ? "{id}" : segment);
+            start = end + 1;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isId(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        boolean digits = true;
+        boolean hex = true;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                digits = false;
+                if (!(c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F' || c == '-')) {
+                    hex = false;
+                    break;
+                }
+            }
+        }
+        return digits || hex && segment.length() >= 16;
+    }
+
+    /** copies of the stats by host */
+    public synchronized Map<String, EndpointStats> getHostStats() {
+        return copy(mHosts);
+    }
+
+    /** copies of the stats by endpoint */
+    public synchronized Map<String, EndpointStats> getEndpointStats() {
+        return copy(mEndpoints);
+    }
+
+    private static Map<String, EndpointStats> copy(Map<String, EndpointStats> map) {
+        Map<String, EndpointStats> copy = new TreeMap<String, EndpointStats>();
+        for (Map.Entry<String, EndpointStats> entry : map.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    /**
+     * the endpoints with the largest response bodies, largest first
+     * @param count
+     * @return the largest body of each endpoint by endpoint
+     */
+    public synchronized Map<String, Long> getLargestBodies(int count) {
+        List<Map.Entry<String, EndpointStats>> entries =
+                new ArrayList<Map.Entry<String, EndpointStats>>(mEndpoints.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, EndpointStats>>() {
+            @Override
+            public int compare(Map.Entry<String, EndpointStats> a, Map.Entry<String, EndpointStats> b) {
+                long x = a.getValue().getMaxBodyBytes();
+                long y = b.getValue().getMaxBodyBytes();
+                return x < y ? 1 : x == y ? 0 : -1;
+            }
+        });
+        Map<String, Long> largest = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < entries.size() && i < count; i++) {
+            Map.Entry<String, EndpointStats> entry = entries.get(i);
+            largest.put(entry.getKey(), entry.getValue().getMaxBodyBytes());
+        }
+        return largest;
+    }
+
+    public synchronized void reset() {
+        mHosts.clear();
+        mEndpoints.clear();
+    }
+
+    /**
+     * write the stats of every host and endpoint to {@link LogUtil} once per period
+     * @param period
+     * @param unit
+     */
+    public synchronized void startLogging(long period, TimeUnit unit) {
+        stopLogging();
+        if (mLogTimer == null) {
+            mLogTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        mLogTask = mLogTimer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                log();
+            }
+        }, period, period, unit);
+    }
+
+    public synchronized void stopLogging() {
+        if (mLogTask != null) {
+            mLogTask.cancel(false);
+            mLogTask = null;
+        }
+    }
+
+    /** write the stats to {@link LogUtil} now */
+    public void log() {
+        for (Map.Entry<String, EndpointStats> entry : getHostStats().entrySet()) {
+            LogUtil.i(TAG, entry.getKey() + ": " + entry.getValue());
+        }
+        for (Map.Entry<String, EndpointStats> entry : getEndpointStats().entrySet()) {
+            LogUtil.i(TAG, entry.getKey() + ": " + entry.getValue());
+        }
+    }
+}
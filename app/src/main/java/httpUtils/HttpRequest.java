@@ -0,0 +1,167 @@
+package httpUtils;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.RequestBody;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one request for {@link HttpAsyncTaskManager#request(HttpRequest, TaskHandler)}.
+ * every call of the manager is one of these, run by the same engine, so the retry,
+ * cache, timeout and metrics work the same for all of them. how the body of the
+ * response is read depends on the handler: a {@link TaskByteHandler} gets the bytes,
+ * a {@link ReaderTaskHandler} parses the stream on the worker, others get a String.
+ * the options not set here are taken from the manager
+ */
+public class HttpRequest {
+
+    /** a response body larger than this is not read into memory by default */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 8 * 1024 * 1024;
+
+    final String method;
+    final String url;
+    final Headers.Builder headers = new Headers.Builder();
+    final RequestBody body;
+    final MultipartUpload upload;
+    final ResumableUpload resumable;
+    RequestDispatcher.Priority priority;
+    CachePolicy cachePolicy;
+    RetryPolicy retryPolicy;
+    boolean hasRetryPolicy;
+    long timeoutMillis;
+    String idempotencyKey;
+    long maxMemoryBytes = DEFAULT_MAX_MEMORY_BYTES;
+    /** -1 for the manager's */
+    long resultTtlMillis = -1;
+
+    private HttpRequest(String method, String url, RequestBody body,
+                        MultipartUpload upload, ResumableUpload resumable) {
+        this.method = method;
+        this.url = url;
+        this.body = body;
+        this.upload = upload;
+        this.resumable = resumable;
+    }
+
+    /**
+     * @param method the HTTP method
+     * @param url
+     * @param body null for GET and HEAD
+     */
+    public HttpRequest(String method, String url, RequestBody body) {
+        this(method, url, body, null, null);
+    }
+
+    public static HttpRequest get(String url) {
+        return new HttpRequest("GET", url, null);
+    }
+
+    public static HttpRequest post(String url, RequestBody body) {
+        return new HttpRequest("POST", url, body);
+    }
+
+    public static HttpRequest postJson(String url, String json) {
+        return post(url, RequestBody.create(HttpAsyncTaskManager.JSON, json));
+    }
+
+    /** a {@code application/x-www-form-urlencoded} post of the params */
+    public static HttpRequest postForm(String url, Map<String, String> params) {
+        return post(url, FormEncoder.body(params));
+    }
+
+    /** multipart post of fields and files, the files are streamed from disk */
+    public static HttpRequest upload(String url, MultipartUpload upload) {
+        return new HttpRequest("POST", url, null, upload, null);
+    }
+
+    /** a file put in chunks, a failed attempt resumes where the server stopped */
+    public static HttpRequest resumableUpload(String url, ResumableUpload upload) {
+        return new HttpRequest("PUT", url, null, null, upload);
+    }
+
+    public HttpRequest addHeader(String name, String value) {
+        headers.add(name, value);
+        return this;
+    }
+
+    public HttpRequest setPriority(RequestDispatcher.Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /** for GET requests, needs {@link OkHttpUtil#installCache} to have an effect */
+    public HttpRequest setCachePolicy(CachePolicy policy) {
+        this.cachePolicy = policy;
+        return this;
+    }
+
+    /**
+     * keep the parsed result of a GET in the {@link ResultCache}. a result younger than
+     * the ttl is delivered again without a request; an older one is delivered at once
+     * and refreshed in the background, the handler is called again only if the refreshed
+     * result is not equals() to it, so onSuccess and onFinish may be called twice.
+     * a failed refresh is not reported. the result is shared with every later caller
+     * and must not be changed, see {@link ResultCache}
+     * @param ttl 0 to always refresh the delivered result
+     * @param unit
+     */
+    public HttpRequest setResultTtl(long ttl, TimeUnit unit) {
+        this.resultTtlMillis = unit.toMillis(ttl);
+        return this;
+    }
+
+    /** @param policy null for no retry, even if the manager has a policy */
+    public HttpRequest setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+        this.hasRetryPolicy = true;
+        return this;
+    }
+
+    /**
+     * give up an attempt that takes longer than this, from sending the request until
+     * the body is read. a timed out attempt is retried like one without a response
+     * @param timeout 0 for the timeouts of the client only
+     * @param unit
+     */
+    public HttpRequest setTimeout(long timeout, TimeUnit unit) {
+        this.timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * the largest response body read into memory. a {@link SourceTaskHandler} gets a
+     * larger one in a temp file, for other handlers the call fails with
+     * {@link BodyTooLargeException} without reading the rest.
+     * a {@link ReaderTaskHandler} parses while reading and is not limited
+     * @param bytes
+     */
+    public HttpRequest setMaxMemoryBytes(long bytes) {
+        this.maxMemoryBytes = bytes;
+        return this;
+    }
+
+    /**
+     * keep the request in the {@link OfflineWriteQueue} if it is made offline or gets
+     * no response, instead of failing. it is sent with the key in
+     * {@link OfflineWriteQueue#IDEMPOTENCY_KEY_HEADER}
+     * @param idempotencyKey the same for every copy of this write, a queued write
+     *                       is replaced by a newer one with its key
+     */
+    public HttpRequest setDeferrable(String idempotencyKey) {
+        if (upload != null || resumable != null || body == null) {
+            throw new IllegalStateException("only a request with a body in memory can be deferred");
+        }
+        this.idempotencyKey = idempotencyKey;
+        headers.add(OfflineWriteQueue.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        return this;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+}
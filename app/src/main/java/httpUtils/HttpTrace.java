@@ -0,0 +1,206 @@
+package httpUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * what one call did, kept by {@link HttpTraceLog}. the url is its endpoint, e.g.
+ * {@code GET api.example.com/user/{id}}, so no ids or query strings get into the log
+ */
+public class HttpTrace {
+
+    /** how the response cache answered the call */
+    public enum Cache {
+        /** nothing usable was cached */
+        NETWORK,
+        /** answered from the cache without the network */
+        HIT,
+        /** a stale entry was revalidated, the server answered 304 */
+        NOT_MODIFIED,
+        /** a stale entry was revalidated, the server sent a new body */
+        REVALIDATED
+    }
+
+    final long id;
+    /** System.currentTimeMillis() at the start of the call */
+    final long startMillis;
+    final String endpoint;
+    final int code;
+    /** 1 for the first attempt of a request, 2 for its first retry... */
+    final int attempt;
+    final Cache cache;
+    final long dnsMillis;
+    final long connectMillis;
+    final long tlsMillis;
+    /** -1 if no request was sent */
+    final long ttfbMillis;
+    final long totalMillis;
+    final long bytesSent;
+    final long bytesReceived;
+    final long bodyBytes;
+    /** size on disk of the files of a {@link MultipartUpload}, 0 if there were none */
+    final long uploadFileBytes;
+    final long uploadSentBytes;
+    /** why the call failed without a response, or its body could not be read, may be null */
+    final String error;
+
+    HttpTrace(long id, CallMetrics call) {
+        this.id = id;
+        this.startMillis = call.startMillis;
+        this.endpoint = HttpMetrics.endpoint(call.method, call.host, call.path);
+        this.code = call.code;
+        this.attempt = call.attempt;
+        this.cache = call.cache;
+        this.dnsMillis = millis(call.dnsNanos);
+        this.connectMillis = millis(call.connectNanos);
+        this.tlsMillis = millis(call.tlsNanos());
+        this.ttfbMillis = call.ttfbNanos >= 0 ? millis(call.ttfbNanos) : -1;
+        // a body that was never closed did not end the call
+        this.totalMillis = millis(call.totalNanos > 0 ? call.totalNanos
+                : System.nanoTime() - call.startNanos);
+        this.bytesSent = call.bytesSent;
+        this.bytesReceived = call.bytesReceived;
+        this.bodyBytes = call.bodyBytes;
+        this.uploadFileBytes = call.uploadFileBytes;
+        this.uploadSentBytes = call.uploadSentBytes;
+        this.error = call.error;
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /** increasing in the order the calls ended, for this process */
+    public long getId() {
+        return id;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /** the status of the response, {@link RetryPolicy#NO_RESPONSE} if there was none */
+    public int getCode() {
+        return code;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public int getRetryCount() {
+        return attempt - 1;
+    }
+
+    /** null if the call failed before it got to the cache */
+    public Cache getCache() {
+        return cache;
+    }
+
+    public long getDnsMillis() {
+        return dnsMillis;
+    }
+
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    public long getTlsMillis() {
+        return tlsMillis;
+    }
+
+    public long getTtfbMillis() {
+        return ttfbMillis;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    public long getUploadFileBytes() {
+        return uploadFileBytes;
+    }
+
+    /** what was sent of the files, less if pictures were compressed */
+    public long getUploadSentBytes() {
+        return uploadSentBytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /** no response, an error status or a body that could not be read */
+    public boolean isFailed() {
+        return error != null || code < 200 || code >= 400;
+    }
+
+    /** one line of JSON, the format of the file and of {@link HttpTraceLog#export} */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder(256)
+                .append("{\"id\":").append(id)
+                .append(",\"start\":").append(startMillis)
+                .append(",\"endpoint\":");
+        quote(sb, endpoint)
+                .append(",\"code\":").append(code)
+                .append(",\"attempt\":").append(attempt)
+                .append(",\"cache\":");
+        quote(sb, cache != null ? cache.name() : null)
+                .append(",\"dns\":").append(dnsMillis)
+                .append(",\"connect\":").append(connectMillis)
+                .append(",\"tls\":").append(tlsMillis)
+                .append(",\"ttfb\":").append(ttfbMillis)
+                .append(",\"total\":").append(totalMillis)
+                .append(",\"sent\":").append(bytesSent)
+                .append(",\"received\":").append(bytesReceived)
+                .append(",\"body\":").append(bodyBytes)
+                .append(",\"files\":").append(uploadFileBytes)
+                .append(",\"filesSent\":").append(uploadSentBytes)
+                .append(",\"error\":");
+        return quote(sb, error).append('}').toString();
+    }
+
+    private static StringBuilder quote(StringBuilder sb, String s) {
+        if (s == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + endpoint + " " + code + (attempt > 1 ? " attempt " + attempt : "")
+                + (cache != null && cache != Cache.NETWORK ? " " + cache : "")
+                + " dns " + dnsMillis + "ms connect " + connectMillis + "ms tls " + tlsMillis
+                + "ms ttfb " + ttfbMillis + "ms total " + totalMillis + "ms, " + bytesSent + "B sent "
+                + bytesReceived + "B received"
+                + (uploadFileBytes > 0 ? ", files " + uploadFileBytes + "B sent as " + uploadSentBytes + "B" : "")
+                + (error != null ? ", " + error : "");
+    }
+}
@@ -0,0 +1,341 @@
+package httpUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Utils.LogUtil;
+
+/**
+ * a {@link HttpTrace} for the calls of {@link OkHttpUtil}, kept in a ring buffer and
+ * optionally appended to a file as JSON lines. the calls of a {@link HttpAsyncTaskManager}
+ * request are traced once per attempt, with its retry count and what went wrong.
+ * failed calls are always kept, successful ones are sampled and limited per endpoint
+ * so a busy endpoint does not push everything else out
+ */
+public class HttpTraceLog {
+
+    private static final String TAG = HttpTraceLog.class.getSimpleName();
+
+    public static final int DEFAULT_CAPACITY = 256;
+    /** successful calls of one endpoint kept per minute */
+    public static final int DEFAULT_MAX_PER_MINUTE = 30;
+    private static final String FILE_NAME = "http_trace.log";
+    private static final String OLD_FILE_NAME = "http_trace.1.log";
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    private static final HttpTraceLog sInstance = new HttpTraceLog();
+
+    /** picks the traces for {@link #query} */
+    public interface Filter {
+        boolean accept(HttpTrace trace);
+    }
+
+    private final AtomicLong mIds = new AtomicLong();
+    private final Random mRandom = new Random();
+    /** the successes kept in the current minute, by endpoint */
+    private final Map<String, int[]> mBudgets = new HashMap<String, int[]>();
+    private volatile boolean mEnabled = true;
+    private HttpTrace[] mRing = new HttpTrace[DEFAULT_CAPACITY];
+    private int mNext;
+    private int mSize;
+    private double mSampleRate = 1;
+    private int mMaxPerMinute = DEFAULT_MAX_PER_MINUTE;
+    private long mBudgetMinute;
+    private long mSampledOutCount;
+    private boolean mLogcat;
+    private File mDir;
+    private long mMaxFileBytes;
+    private ExecutorService mWriter;
+
+    public static HttpTraceLog get() {
+        return sInstance;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /** the number of traces in memory, the oldest are dropped */
+    public synchronized void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity < 1");
+        }
+        List<HttpTrace> traces = getTraces();
+        mRing = new HttpTrace[capacity];
+        mNext = 0;
+        mSize = 0;
+        for (int i = Math.max(0, traces.size() - capacity); i < traces.size(); i++) {
+            add(traces.get(i));
+        }
+    }
+
+    /** @param rate the part of the successful calls that is kept, from 0 to 1 */
+    public synchronized void setSampleRate(double rate) {
+        this.mSampleRate = rate;
+    }
+
+    /** @param count successful calls of one endpoint kept per minute, 0 for no limit */
+    public synchronized void setMaxPerMinute(int count) {
+        this.mMaxPerMinute = count;
+    }
+
+    /** also write the kept traces to {@link LogUtil} */
+    public synchronized void setLogcat(boolean logcat) {
+        this.mLogcat = logcat;
+    }
+
+    /**
+     * append the kept traces to a file in the dir. when it is larger than maxBytes it
+     * becomes the old file and a new one is started, the two take at most twice maxBytes
+     * @param dir e.g. getFilesDir() or getExternalFilesDir(null)
+     * @param maxBytes
+     */
+    public synchronized void enableFile(File dir, long maxBytes) {
+        this.mDir = dir;
+        this.mMaxFileBytes = maxBytes;
+        if (mWriter == null) {
+            mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /** stop writing the file, it is kept */
+    public synchronized void disableFile() {
+        mDir = null;
+    }
+
+    /** called when a call ended, see {@link MetricsInterceptor} and {@link DispatchTask} */
+    void record(CallMetrics call) {
+        if (!mEnabled) {
+            return;
+        }
+        HttpTrace trace = new HttpTrace(mIds.incrementAndGet(), call);
+        final String line;
+        synchronized (this) {
+            if (!trace.isFailed() && !sample(trace)) {
+                mSampledOutCount++;
+                return;
+            }
+            add(trace);
+            if (mLogcat) {
+                LogUtil.i(TAG, trace.toString());
+            }
+            if (mDir == null) {
+                return;
+            }
+            line = trace.toJson();
+            final File dir = mDir;
+            final long maxBytes = mMaxFileBytes;
+            mWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    append(dir, maxBytes, line);
+                }
+            });
+        }
+    }
+
+    /** whether to keep a successful call, holding the lock */
+    private boolean sample(HttpTrace trace) {
+        if (mSampleRate < 1 && mRandom.nextDouble() >= mSampleRate) {
+            return false;
+        }
+        if (mMaxPerMinute <= 0) {
+            return true;
+        }
+        long minute = trace.startMillis / MINUTE_MILLIS;
+        if (minute != mBudgetMinute) {
+            mBudgetMinute = minute;
+            mBudgets.clear();
+        }
+        int[] kept = mBudgets.get(trace.endpoint);
+        if (kept == null) {
+            kept = new int[1];
+            mBudgets.put(trace.endpoint, kept);
+        }
+        return ++kept[0] <= mMaxPerMinute;
+    }
+
+    private void add(HttpTrace trace) {
+        mRing[mNext] = trace;
+        mNext = (mNext + 1) % mRing.length;
+        if (mSize < mRing.length) {
+            mSize++;
+        }
+    }
+
+    /** on the writer thread */
+    private static void append(File dir, long maxBytes, String line) {
+        File file = new File(dir, FILE_NAME);
+        if (file.length() > maxBytes) {
+            File old = new File(dir, OLD_FILE_NAME);
+            old.delete();
+            file.renameTo(old);
+        }
+        Writer out = null;
+        try {
+            out = new OutputStreamWriter(new FileOutputStream(file, true), IOUtils.UTF_8);
+            out.write(line);
+            out.write('\n');
+        } catch (IOException e) {
+            // the traces stay in memory
+            android.util.Log.w(TAG, "cannot write " + file + ": " + e);
+        } finally {
+            IOUtils.closeStream(out);
+        }
+    }
+
+    /** the traces in memory, oldest first */
+    public synchronized List<HttpTrace> getTraces() {
+        List<HttpTrace> traces = new ArrayList<HttpTrace>(mSize);
+        int start = (mNext - mSize + mRing.length) % mRing.length;
+        for (int i = 0; i < mSize; i++) {
+            traces.add(mRing[(start + i) % mRing.length]);
+        }
+        return traces;
+    }
+
+    /**
+     * the traces in memory the filter accepts, newest first, e.g. for a debug screen
+     * @param filter null for all
+     * @param limit
+     * @return
+     */
+    public synchronized List<HttpTrace> query(Filter filter, int limit) {
+        List<HttpTrace> traces = new ArrayList<HttpTrace>();
+        for (int i = 1; i <= mSize && traces.size() < limit; i++) {
+            HttpTrace trace = mRing[(mNext - i + mRing.length) % mRing.length];
+            if (filter == null || filter.accept(trace)) {
+                traces.add(trace);
+            }
+        }
+        return traces;
+    }
+
+    public static Filter failed() {
+        return new Filter() {
+            @Override
+            public boolean accept(HttpTrace trace) {
+                return trace.isFailed();
+            }
+        };
+    }
+
+    /** @param endpoint e.g. {@code GET api.example.com/user/{id}}, or the start of it */
+    public static Filter endpoint(final String endpoint) {
+        return new Filter() {
+            @Override
+            public boolean accept(HttpTrace trace) {
+                return trace.endpoint.startsWith(endpoint);
+            }
+        };
+    }
+
+    public static Filter slowerThan(final long millis) {
+        return new Filter() {
+            @Override
+            public boolean accept(HttpTrace trace) {
+                return trace.totalMillis > millis;
+            }
+        };
+    }
+
+    /**
+     * write the traces as JSON lines, oldest first: the file if there is one,
+     * with what is queued for it, else the traces in memory
+     * @param out
+     * @throws IOException
+     */
+    public void export(final Writer out) throws IOException {
+        final File dir;
+        ExecutorService writer;
+        synchronized (this) {
+            dir = mDir;
+            writer = mWriter;
+        }
+        if (dir == null) {
+            for (HttpTrace trace : getTraces()) {
+                out.write(trace.toJson());
+                out.write('\n');
+            }
+            out.flush();
+            return;
+        }
+        // on the writer thread, after the lines queued before
+        try {
+            writer.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    copy(new File(dir, OLD_FILE_NAME), out);
+                    copy(new File(dir, FILE_NAME), out);
+                    out.flush();
+                    return null;
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("export interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void copy(File file, Writer out) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        Reader in = new InputStreamReader(new FileInputStream(file), IOUtils.UTF_8);
+        try {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            IOUtils.closeStream(in);
+        }
+    }
+
+    /** successful calls that were not kept because of the sampling */
+    public synchronized long getSampledOutCount() {
+        return mSampledOutCount;
+    }
+
+    /** drop the traces in memory, the file is kept */
+    public synchronized void clear() {
+        mRing = new HttpTrace[mRing.length];
+        mNext = 0;
+        mSize = 0;
+    }
+}
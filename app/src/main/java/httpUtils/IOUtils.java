@@ -1,42 +1,322 @@
 package httpUtils;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 public class IOUtils {
 
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** chars decoded per read */
+	private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+
+	/** first and largest segment of a body read without Content-Length */
+	static final int MIN_SEGMENT_SIZE = 8 * 1024;
+	private static final int MAX_SEGMENT_SIZE = 64 * 1024;
+
+	/** presize no more than this even if the Content-Length is larger */
+	private static final int MAX_PRESIZE = 4 * 1024 * 1024;
+
+	/** each worker thread reuses one decode buffer */
+	private static final ThreadLocal<char[]> sCharBuffer = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[CHAR_BUFFER_SIZE];
+		}
+	};
+
 	/**Stream reverse to String*/
 	public static String stream2String(final InputStream instream)
 			throws IOException {
-		final StringBuilder sb = new StringBuilder();
+		return stream2String(instream, -1, UTF_8);
+	}
+
+	/**
+	 * Stream reverse to String, the body is kept as it is (line endings included)
+	 * @param instream
+	 * @param contentLength the Content-Length of the body or -1,used to presize the result
+	 * @param charset
+	 */
+	public static String stream2String(final InputStream instream, long contentLength,
+			Charset charset) throws IOException {
+		// a byte decodes to at most one char, so the length is an upper bound
+		int capacity = contentLength > 0 ? (int) Math.min(contentLength, MAX_PRESIZE) : 16;
+		final StringBuilder sb = new StringBuilder(capacity);
 		try {
-			final BufferedReader reader = new BufferedReader(
-					new InputStreamReader(instream, "UTF-8"));
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				sb.append(line + "\n");
+			final Reader reader = new InputStreamReader(instream, charset);
+			final char[] buff = sCharBuffer.get();
+			int rc;
+			while ((rc = reader.read(buff, 0, buff.length)) != -1) {
+				sb.append(buff, 0, rc);
 			}
 		} finally {
 			closeStream(instream);
 		}
 		return sb.toString();
 	}
-	
-	/**Stream reverse to String*/
+
+	/**Reader reverse to String, the Reader is closed*/
+	public static String reader2String(final Reader reader) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		try {
+			final char[] buff = sCharBuffer.get();
+			int rc;
+			while ((rc = reader.read(buff, 0, buff.length)) != -1) {
+				sb.append(buff, 0, rc);
+			}
+		} finally {
+			closeStream(reader);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Stream reverse to Reader,for parsers that read the body without an intermediate String.
+	 * the caller closes the Reader
+	 */
+	public static Reader stream2Reader(final InputStream instream, Charset charset) {
+		return new InputStreamReader(instream, charset);
+	}
+
+	/**Stream reverse to byte[]*/
 	public static byte[] stream2Bytes(final InputStream instream)
 			throws IOException {
-		ByteArrayOutputStream swapStream = new ByteArrayOutputStream();
-		byte[] buff = new byte[100];
-		int rc = 0;
-		while ((rc = instream.read(buff, 0, 100)) > 0) {
-			swapStream.write(buff, 0, rc);
-		}
-		byte[] in2b = swapStream.toByteArray();
-		return in2b;
+		return stream2Bytes(instream, -1);
+	}
+
+	/**
+	 * Stream reverse to byte[]. with a known length the body is read straight into
+	 * the result, otherwise into pooled segments that are copied once at the end
+	 * @param instream
+	 * @param contentLength the Content-Length of the body or -1
+	 */
+	public static byte[] stream2Bytes(final InputStream instream, long contentLength)
+			throws IOException {
+		try {
+			if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+				byte[] result = new byte[(int) contentLength];
+				int offset = 0;
+				while (offset < result.length) {
+					int rc = instream.read(result, offset, result.length - offset);
+					if (rc == -1) {
+						throw new EOFException("expected " + contentLength + " bytes, got " + offset);
+					}
+					offset += rc;
+				}
+				return result;
+			}
+			return readSegments(instream);
+		} finally {
+			closeStream(instream);
+		}
+	}
+
+	/** read a body of unknown length into growing pooled segments */
+	private static byte[] readSegments(InputStream instream) throws IOException {
+		ByteArrayPool pool = ByteArrayPool.get();
+		List<byte[]> segments = new ArrayList<byte[]>();
+		int total = 0;
+		int segmentSize = MIN_SEGMENT_SIZE;
+		try {
+			byte[] segment = pool.getBuf(segmentSize);
+			segments.add(segment);
+			int count = 0;
+			int rc;
+			while ((rc = instream.read(segment, count, segment.length - count)) != -1) {
+				count += rc;
+				total += rc;
+				if (count == segment.length) {
+					segmentSize = Math.min(segmentSize * 2, MAX_SEGMENT_SIZE);
+					segment = pool.getBuf(segmentSize);
+					segments.add(segment);
+					count = 0;
+				}
+			}
+			byte[] result = new byte[total];
+			int offset = 0;
+			for (byte[] s : segments) {
+				int len = Math.min(s.length, total - offset);
+				System.arraycopy(s, 0, result, offset, len);
+				offset += len;
+			}
+			return result;
+		} finally {
+			for (byte[] s : segments) {
+				pool.returnBuf(s);
+			}
+		}
+	}
+
+	/**
+	 * Stream reverse to String, failing with {@link BodyTooLargeException} as soon as
+	 * the body turns out larger than maxBytes, before it was all read
+	 */
+	public static String stream2String(final InputStream instream, long contentLength,
+			Charset charset, long maxBytes) throws IOException {
+		checkLength(instream, contentLength, maxBytes);
+		return stream2String(limit(instream, maxBytes), contentLength, charset);
+	}
+
+	/**
+	 * Stream reverse to byte[], failing with {@link BodyTooLargeException} as soon as
+	 * the body turns out larger than maxBytes, before it was all read
+	 */
+	public static byte[] stream2Bytes(final InputStream instream, long contentLength,
+			long maxBytes) throws IOException {
+		checkLength(instream, contentLength, maxBytes);
+		return stream2Bytes(limit(instream, maxBytes), contentLength);
+	}
+
+	/**
+	 * Stream reverse to a {@link BodySource}: in memory up to maxMemoryBytes, a larger
+	 * body goes to a temp file in dir
+	 * @param instream
+	 * @param contentLength the Content-Length of the body or -1
+	 * @param maxMemoryBytes
+	 * @param dir where the temp file is made
+	 * @throws IOException a failure to write the temp file is a {@link LocalIOException}
+	 */
+	public static BodySource stream2Source(final InputStream instream, long contentLength,
+			long maxMemoryBytes, File dir) throws IOException {
+		if (contentLength >= 0 && contentLength <= maxMemoryBytes) {
+			return new BodySource(stream2Bytes(instream, contentLength));
+		}
+		ByteArrayPool pool = ByteArrayPool.get();
+		byte[] buff = pool.getBuf(MAX_SEGMENT_SIZE);
+		// a body of unknown length is kept in memory until it is too large for it
+		ByteArrayOutputStream memory = contentLength < 0
+				? new ByteArrayOutputStream(MIN_SEGMENT_SIZE) : null;
+		File file = null;
+		OutputStream out = null;
+		try {
+			if (memory == null) {
+				file = createTempFile(dir);
+				out = open(file);
+			}
+			int rc;
+			while ((rc = instream.read(buff, 0, buff.length)) != -1) {
+				try {
+					if (memory != null && memory.size() + rc > maxMemoryBytes) {
+						file = createTempFile(dir);
+						out = open(file);
+						memory.writeTo(out);
+						memory = null;
+					}
+					if (memory != null) {
+						memory.write(buff, 0, rc);
+					} else {
+						out.write(buff, 0, rc);
+					}
+				} catch (LocalIOException e) {
+					throw e;
+				} catch (IOException e) {
+					throw new LocalIOException(e);
+				}
+			}
+			if (memory != null) {
+				return new BodySource(memory.toByteArray());
+			}
+			try {
+				out.close();
+			} catch (IOException e) {
+				throw new LocalIOException(e);
+			}
+			out = null;
+			return new BodySource(file);
+		} catch (IOException e) {
+			closeStream(out);
+			out = null;
+			if (file != null) {
+				file.delete();
+			}
+			throw e;
+		} finally {
+			pool.returnBuf(buff);
+			closeStream(out);
+			closeStream(instream);
+		}
+	}
+
+	private static File createTempFile(File dir) throws LocalIOException {
+		try {
+			return File.createTempFile("body", ".tmp", dir);
+		} catch (IOException e) {
+			throw new LocalIOException(e);
+		}
+	}
+
+	private static OutputStream open(File file) throws LocalIOException {
+		try {
+			return new FileOutputStream(file);
+		} catch (IOException e) {
+			throw new LocalIOException(e);
+		}
+	}
+
+	private static void checkLength(InputStream instream, long contentLength, long maxBytes)
+			throws IOException {
+		if (contentLength > maxBytes) {
+			closeStream(instream);
+			throw new BodyTooLargeException(maxBytes);
+		}
+	}
+
+	/** a Stream that fails once more than maxBytes were read from it */
+	private static InputStream limit(InputStream instream, final long maxBytes) {
+		return new FilterInputStream(instream) {
+			private long mCount;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b != -1) {
+					count(1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int count) throws IOException {
+				int rc = super.read(buffer, offset, count);
+				if (rc > 0) {
+					count(rc);
+				}
+				return rc;
+			}
+
+			private void count(int read) throws BodyTooLargeException {
+				mCount += read;
+				if (mCount > maxBytes) {
+					throw new BodyTooLargeException(maxBytes);
+				}
+			}
+		};
+	}
+
+	/**read the Stream to its end and close it, e.g. so a response is written to the cache*/
+	public static void skipAll(final InputStream instream) throws IOException {
+		ByteArrayPool pool = ByteArrayPool.get();
+		byte[] buff = pool.getBuf(MIN_SEGMENT_SIZE);
+		try {
+			while (instream.read(buff, 0, buff.length) != -1) {
+				// discard
+			}
+		} finally {
+			pool.returnBuf(buff);
+			closeStream(instream);
+		}
 	}
 
 	/**close Stream*/
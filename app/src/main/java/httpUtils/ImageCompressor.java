@@ -0,0 +1,203 @@
+package httpUtils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+
+import com.squareup.okhttp.MediaType;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * shrinks a picture before it is uploaded, see {@link MultipartUpload#addImage}:
+ * decoded with sampling, scaled down to a max edge, turned by its EXIF orientation
+ * and compressed again. the result is written straight into the request, there is
+ * no full size copy in memory or on disk. runs on the thread that writes the body
+ */
+public class ImageCompressor {
+
+    public static final int DEFAULT_MAX_EDGE = 1280;
+    public static final int DEFAULT_QUALITY = 80;
+
+    private final int mMaxEdge;
+    private final int mQuality;
+    private Bitmap.CompressFormat mFormat = Bitmap.CompressFormat.JPEG;
+
+    public ImageCompressor() {
+        this(DEFAULT_MAX_EDGE, DEFAULT_QUALITY);
+    }
+
+    /**
+     * @param maxEdge longest side of the sent picture in pixels
+     * @param quality 0-100, see {@link Bitmap#compress}
+     */
+    public ImageCompressor(int maxEdge, int quality) {
+        if (maxEdge <= 0) {
+            throw new IllegalArgumentException("maxEdge <= 0");
+        }
+        this.mMaxEdge = maxEdge;
+        this.mQuality = quality;
+    }
+
+    public ImageCompressor setFormat(Bitmap.CompressFormat format) {
+        this.mFormat = format;
+        return this;
+    }
+
+    public MediaType getMediaType() {
+        return MediaType.parse(mimeType(mFormat));
+    }
+
+    private static String mimeType(Bitmap.CompressFormat format) {
+        switch (format) {
+            case PNG:
+                return "image/png";
+            case WEBP:
+                return "image/webp";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    /**
+     * the picture is small enough, upright and in the target format: it is sent as it is,
+     * compressing it again would only lose quality
+     * @param file
+     * @return false if the file is not a picture, compressing it fails later
+     */
+    boolean canSendAsIs(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        return options.outWidth > 0
+                && Math.max(options.outWidth, options.outHeight) <= mMaxEdge
+                && mimeType(mFormat).equals(options.outMimeType)
+                && rotation(file) == 0;
+    }
+
+    /**
+     * decode, scale, rotate and compress the picture into out
+     * @param file
+     * @param out is not closed
+     * @return bytes written
+     * @throws IOException out failed, a {@link LocalIOException} if the file is not a picture
+     */
+    long compress(File file, OutputStream out) throws IOException {
+        Bitmap bitmap = decode(file);
+        try {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            if (!bitmap.compress(mFormat, mQuality, counting)) {
+                if (counting.error != null) {
+                    // compress() returns false when the stream throws
+                    throw counting.error;
+                }
+                throw new LocalIOException("cannot compress " + file);
+            }
+            counting.flush();
+            return counting.count;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private Bitmap decode(File file) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new LocalIOException("not a picture: " + file);
+        }
+        // sampling only goes in powers of two, it never goes below the max edge
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, mMaxEdge);
+        options.inJustDecodeBounds = false;
+        if (mFormat == Bitmap.CompressFormat.JPEG) {
+            // no alpha in a jpeg, half the memory of ARGB_8888
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+        Bitmap sampled = BitmapFactory.decodeFile(file.getPath(), options);
+        if (sampled == null) {
+            throw new LocalIOException("cannot decode " + file);
+        }
+        int width = sampled.getWidth();
+        int height = sampled.getHeight();
+        float scale = Math.min(1f, (float) mMaxEdge / Math.max(width, height));
+        int rotation = rotation(file);
+        if (scale == 1f && rotation == 0) {
+            return sampled;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        Bitmap result = Bitmap.createBitmap(sampled, 0, 0, width, height, matrix, true);
+        if (result != sampled) {
+            sampled.recycle();
+        }
+        return result;
+    }
+
+    /** largest power of two that keeps the longer edge at least maxEdge */
+    static int sampleSize(int width, int height, int maxEdge) {
+        int edge = Math.max(width, height);
+        int sampleSize = 1;
+        while (edge / (sampleSize * 2) >= maxEdge) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /** degrees to turn the picture by to make it upright */
+    private static int rotation(File file) {
+        try {
+            int orientation = new ExifInterface(file.getPath()).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+        /** what the stream threw, the bitmap only tells it failed */
+        IOException error;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package httpUtils;
+
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.TypeReference;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+
+/**
+ * a {@link ReaderTaskHandler} that decodes the body with fastjson straight into
+ * the target type on the worker thread, e.g.
+ * {@code new JsonTaskHandler<JSONArray>(JSONArray.class) {...}}.
+ * only the finished object is handed to {@link #onSuccess(Object)}.
+ */
+public abstract class JsonTaskHandler<T> extends ReaderTaskHandler<T> {
+
+	private final Type mType;
+
+	public JsonTaskHandler(Class<T> type) {
+		this.mType = type;
+	}
+
+	public JsonTaskHandler(TypeReference<T> type) {
+		this.mType = type.getType();
+	}
+
+	@Override
+	public T parseResult(Reader reader) throws IOException {
+		JSONReader jsonReader = new JSONReader(reader);
+		try {
+			return jsonReader.readObject(mType);
+		} finally {
+			jsonReader.close();
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package httpUtils;
+
+import java.util.Arrays;
+
+/**
+ * counts durations in buckets that grow by 25%, from 1 ms to 2 minutes. recording
+ * is a binary search and an increment, a percentile is exact to one bucket
+ */
+public class LatencyHistogram {
+
+    /** upper bounds of the buckets in ms, the last bucket takes everything above */
+    private static final long[] BOUNDS;
+
+    static {
+        long[] bounds = new long[64];
+        int count = 0;
+        double bound = 1;
+        while (bound < 120 * 1000) {
+            long rounded = Math.round(bound);
+            if (count == 0 || rounded > bounds[count - 1]) {
+                bounds[count++] = rounded;
+            }
+            bound *= 1.25;
+        }
+        BOUNDS = Arrays.copyOf(bounds, count);
+    }
+
+    private final long[] mCounts = new long[BOUNDS.length + 1];
+    private long mCount;
+    private long mSumMillis;
+    private long mMaxMillis;
+
+    public synchronized void record(long millis) {
+        int index = Arrays.binarySearch(BOUNDS, millis);
+        mCounts[index >= 0 ? index : -index - 1]++;
+        mCount++;
+        mSumMillis += millis;
+        mMaxMillis = Math.max(mMaxMillis, millis);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMeanMillis() {
+        return mCount == 0 ? 0 : mSumMillis / mCount;
+    }
+
+    public synchronized long getMaxMillis() {
+        return mMaxMillis;
+    }
+
+    /**
+     * @param percentile 0-100, e.g. 95
+     * @return the upper bound of the bucket holding the percentile, never above the max
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank && mCounts[i] > 0) {
+                return i < BOUNDS.length ? Math.min(BOUNDS[i], mMaxMillis) : mMaxMillis;
+            }
+        }
+        return mMaxMillis;
+    }
+
+    synchronized LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        System.arraycopy(mCounts, 0, copy.mCounts, 0, mCounts.length);
+        copy.mCount = mCount;
+        copy.mSumMillis = mSumMillis;
+        copy.mMaxMillis = mMaxMillis;
+        return copy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "n=" + mCount + " p50=" + getPercentile(50) + " p95=" + getPercentile(95)
+                + " p99=" + getPercentile(99) + " max=" + mMaxMillis;
+    }
+}
@@ -0,0 +1,22 @@
+package httpUtils;
+
+import java.io.IOException;
+
+/**
+ * a failure on the device, not of the network: a file to upload is missing or a
+ * picture could not be compressed, the temp file of a response could not be written,
+ * or a body read whole could not be parsed. the call is not retried
+ */
+class LocalIOException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    LocalIOException(String message) {
+        super(message);
+    }
+
+    LocalIOException(IOException cause) {
+        super(cause.toString());
+        initCause(cause);
+    }
+}
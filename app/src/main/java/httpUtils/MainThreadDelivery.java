@@ -0,0 +1,111 @@
+package httpUtils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * hands the results of requests made with {@link HttpAsyncTaskManager#withBatchedDelivery}
+ * to the main thread at the start of the next frame, all that arrived since the last
+ * frame in one go. a list screen updates its data in the handlers and calls
+ * notifyDataSetChanged once in a {@link Listener}, instead of once per response
+ */
+public class MainThreadDelivery implements Choreographer.FrameCallback {
+
+    /** called on the main thread after the callbacks of a frame have run */
+    public interface Listener {
+        void onBatchDelivered(int callbacks);
+    }
+
+    private static final MainThreadDelivery sInstance = new MainThreadDelivery();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private ArrayList<Runnable> mPending = new ArrayList<Runnable>();
+    /** the batch being run, swapped with mPending so neither is allocated again */
+    private ArrayList<Runnable> mRunning = new ArrayList<Runnable>();
+    private boolean mScheduled;
+    private long mBatchCount;
+    private long mCallbackCount;
+
+    private final Runnable mSchedule = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(MainThreadDelivery.this);
+        }
+    };
+
+    public static MainThreadDelivery get() {
+        return sInstance;
+    }
+
+    /** run the callback on the main thread with the others of the next frame */
+    void post(Runnable callback) {
+        synchronized (this) {
+            mPending.add(callback);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        // the Choreographer belongs to the main looper, it is only reached from there
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mSchedule.run();
+        } else {
+            mMainHandler.post(mSchedule);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        ArrayList<Runnable> batch;
+        synchronized (this) {
+            batch = mPending;
+            mPending = mRunning;
+            mRunning = batch;
+            mScheduled = false;
+        }
+        int count = batch.size();
+        try {
+            for (int i = 0; i < count; i++) {
+                batch.get(i).run();
+            }
+        } finally {
+            batch.clear();
+        }
+        synchronized (this) {
+            mBatchCount++;
+            mCallbackCount += count;
+        }
+        for (Listener listener : mListeners) {
+            listener.onBatchDelivered(count);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** frames in which batched callbacks were delivered */
+    public synchronized long getBatchCount() {
+        return mBatchCount;
+    }
+
+    /** batched callbacks delivered, divided by {@link #getBatchCount()} the mean batch size */
+    public synchronized long getCallbackCount() {
+        return mCallbackCount;
+    }
+
+    public synchronized void resetCounts() {
+        mBatchCount = 0;
+        mCallbackCount = 0;
+    }
+}
@@ -0,0 +1,269 @@
+package httpUtils;
+
+import com.squareup.okhttp.Dns;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.List;
+
+import javax.net.SocketFactory;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * measures the calls for {@link HttpMetrics}. OkHttp 2 has no event listener, so
+ * the phases are taken from where they happen on the calling thread: this
+ * interceptor starts the call, {@link #dns} and {@link #socketFactory} time the
+ * lookup and the connect, {@link #network} sees the ready connection and the
+ * response headers. see {@link OkHttpUtil} for how they are installed
+ */
+class MetricsInterceptor implements Interceptor {
+
+    /** the call running on this thread */
+    private static final ThreadLocal<CallMetrics> sCurrent = new ThreadLocal<CallMetrics>();
+
+    private final HttpMetrics mMetrics;
+
+    MetricsInterceptor(HttpMetrics metrics) {
+        this.mMetrics = metrics;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        if (!mMetrics.isEnabled() && !HttpTraceLog.get().isEnabled()) {
+            return chain.proceed(chain.request());
+        }
+        Request request = chain.request();
+        URL url = request.url();
+        final CallMetrics call = new CallMetrics(request.method(), url.getHost(), url.getPath());
+        call.https = request.isHttps();
+        if (request.tag() instanceof DispatchTask) {
+            DispatchTask<?> task = (DispatchTask<?>) request.tag();
+            call.attempt = task.attempt;
+            call.tracedByTask = true;
+            CallMetrics previous = task.metrics;
+            task.metrics = call;
+            if (previous != null) {
+                // an earlier call of the same run, e.g. a chunk of a resumable upload
+                HttpTraceLog.get().record(previous);
+            }
+        }
+        CallMetrics outer = sCurrent.get();
+        sCurrent.set(call);
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            call.error = e.toString();
+            finish(call, true);
+            throw e;
+        } finally {
+            sCurrent.set(outer);
+        }
+        call.code = response.code();
+        final ResponseBody body = response.body();
+        if (body == null) {
+            finish(call, false);
+            return response;
+        }
+        // the call ends when its body was read
+        Source source = new ForwardingSource(body.source()) {
+            private boolean mDone;
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read;
+                try {
+                    read = super.read(sink, byteCount);
+                } catch (IOException e) {
+                    call.error = e.toString();
+                    done(true);
+                    throw e;
+                }
+                if (read == -1) {
+                    done(false);
+                } else {
+                    call.bodyBytes += read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // closed before the end: whatever was wanted of the body has been read
+                done(false);
+                super.close();
+            }
+
+            private void done(boolean failed) {
+                if (!mDone) {
+                    mDone = true;
+                    finish(call, failed);
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    private void finish(CallMetrics call, boolean failed) {
+        call.failed = failed;
+        call.totalNanos = System.nanoTime() - call.startNanos;
+        mMetrics.record(call);
+        if (!call.tracedByTask) {
+            HttpTraceLog.get().record(call);
+        }
+    }
+
+    /** a network interceptor: the connection is ready, time the exchange and count its bytes */
+    static final Interceptor network = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            final CallMetrics call = sCurrent.get();
+            if (call == null) {
+                return chain.proceed(chain.request());
+            }
+            long start = System.nanoTime();
+            if (call.acquireNanos < 0) {
+                call.acquireNanos = start - call.startNanos;
+            }
+            RequestBody requestBody = chain.request().body();
+            if (requestBody != null && requestBody.contentLength() > 0) {
+                call.bytesSent += requestBody.contentLength();
+            }
+            Response response = chain.proceed(chain.request());
+            call.ttfbNanos = System.nanoTime() - start;
+            ResponseBody body = response.body();
+            if (body == null) {
+                return response;
+            }
+            // the bytes on the wire, before OkHttp unzips them
+            Source source = new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        call.bytesReceived += read;
+                    }
+                    return read;
+                }
+            };
+            return response.newBuilder()
+                    .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                    .build();
+        }
+    };
+
+    /**
+     * a request body of the call on this thread was compressed while it was written
+     * @param original bytes before
+     * @param compressed bytes sent
+     */
+    static void recordCompression(long original, long compressed) {
+        CallMetrics call = sCurrent.get();
+        if (call != null) {
+            call.bytesSent += compressed;
+            call.bytesBeforeCompression = original;
+            call.bytesAfterCompression = compressed;
+        }
+    }
+
+    /**
+     * the files of a multipart body of the call on this thread were written
+     * @param fileBytes their size on disk
+     * @param sentBytes what was sent of them, less if pictures were compressed
+     */
+    static void recordUpload(long fileBytes, long sentBytes) {
+        CallMetrics call = sCurrent.get();
+        if (call != null) {
+            call.uploadFileBytes = fileBytes;
+            call.uploadSentBytes = sentBytes;
+        }
+    }
+
+    /** how the response cache answered the call on this thread */
+    static void recordCache(HttpTrace.Cache cache) {
+        CallMetrics call = sCurrent.get();
+        if (call != null) {
+            call.cache = cache;
+        }
+    }
+
+    /** times the lookups of the delegate */
+    static Dns dns(final Dns delegate) {
+        return new Dns() {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                long start = System.nanoTime();
+                try {
+                    return delegate.lookup(hostname);
+                } finally {
+                    CallMetrics call = sCurrent.get();
+                    if (call != null) {
+                        call.dnsNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+        };
+    }
+
+    /** makes sockets that time their connect */
+    static SocketFactory socketFactory(final SocketFactory delegate) {
+        return new SocketFactory() {
+            @Override
+            public Socket createSocket() throws IOException {
+                return new TimedSocket();
+            }
+
+            @Override
+            public Socket createSocket(String host, int port) throws IOException {
+                return delegate.createSocket(host, port);
+            }
+
+            @Override
+            public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                    throws IOException {
+                return delegate.createSocket(host, port, localHost, localPort);
+            }
+
+            @Override
+            public Socket createSocket(InetAddress host, int port) throws IOException {
+                return delegate.createSocket(host, port);
+            }
+
+            @Override
+            public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                       int localPort) throws IOException {
+                return delegate.createSocket(address, port, localAddress, localPort);
+            }
+        };
+    }
+
+    private static class TimedSocket extends Socket {
+        @Override
+        public void connect(SocketAddress endpoint, int timeout) throws IOException {
+            long start = System.nanoTime();
+            try {
+                super.connect(endpoint, timeout);
+            } finally {
+                CallMetrics call = sCurrent.get();
+                if (call != null) {
+                    call.connectNanos += System.nanoTime() - start;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package httpUtils;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.MultipartBuilder;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a multipart/form-data POST of any number of fields and files, for
+ * {@link HttpAsyncTaskManager#requestUpload}. files are streamed from disk
+ * while the body is written, none is read into memory
+ */
+public class MultipartUpload {
+
+    private final List<String[]> mHeaders = new ArrayList<String[]>();
+    private final List<String[]> mFields = new ArrayList<String[]>();
+    private final List<FilePart> mFiles = new ArrayList<FilePart>();
+    private ProgressListener mListener;
+    private volatile long mSentFileBytes;
+
+    private static class FilePart {
+        final String name;
+        final String fileName;
+        final File file;
+        final MediaType type;
+        /** null to send the file as it is */
+        final ImageCompressor compressor;
+
+        FilePart(String name, String fileName, File file, MediaType type,
+                 ImageCompressor compressor) {
+            this.name = name;
+            this.fileName = fileName;
+            this.file = file;
+            this.type = type;
+            this.compressor = compressor;
+        }
+    }
+
+    public MultipartUpload addHeader(String name, String value) {
+        mHeaders.add(new String[]{name, value});
+        return this;
+    }
+
+    public MultipartUpload addField(String name, String value) {
+        mFields.add(new String[]{name, value});
+        return this;
+    }
+
+    public MultipartUpload addFile(String name, File file, MediaType type) {
+        return addFile(name, file.getName(), file, type);
+    }
+
+    /**
+     * @param name form field name
+     * @param fileName file name sent to the server
+     * @param file
+     * @param type
+     */
+    public MultipartUpload addFile(String name, String fileName, File file, MediaType type) {
+        mFiles.add(new FilePart(name, fileName, file, type, null));
+        return this;
+    }
+
+    /**
+     * a picture that is made smaller by the compressor while it is sent
+     * @param name form field name
+     * @param file
+     * @param compressor
+     */
+    public MultipartUpload addImage(String name, File file, ImageCompressor compressor) {
+        return addImage(name, file.getName(), file, compressor);
+    }
+
+    public MultipartUpload addImage(String name, String fileName, File file,
+                                    ImageCompressor compressor) {
+        mFiles.add(new FilePart(name, fileName, file, compressor.getMediaType(), compressor));
+        return this;
+    }
+
+    /** called on the main thread while the body is sent */
+    public MultipartUpload setProgressListener(ProgressListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    /** size of all files on disk, the body is a bit larger */
+    public long getFileBytes() {
+        long bytes = 0;
+        for (FilePart part : mFiles) {
+            bytes += part.file.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * size of all files as they were sent by the last attempt, smaller than
+     * {@link #getFileBytes()} when pictures were compressed. complete once the body is written
+     */
+    public long getSentFileBytes() {
+        return mSentFileBytes;
+    }
+
+    /** add the headers and the body to the request */
+    void applyTo(Request.Builder builder) throws IOException {
+        for (String[] header : mHeaders) {
+            builder.header(header[0], header[1]);
+        }
+        builder.post(buildBody());
+    }
+
+    /** the body, built again for every attempt */
+    RequestBody buildBody() throws IOException {
+        MultipartBuilder multipart = new MultipartBuilder().type(MultipartBuilder.FORM);
+        for (String[] field : mFields) {
+            multipart.addFormDataPart(field[0], field[1]);
+        }
+        mSentFileBytes = 0;
+        for (FilePart part : mFiles) {
+            RequestBody body;
+            if (part.compressor == null) {
+                body = RequestBody.create(part.type, part.file);
+                mSentFileBytes += part.file.length();
+            } else {
+                body = new ImageBody(part);
+            }
+            multipart.addFormDataPart(part.name, part.fileName, body);
+        }
+        RequestBody body = new FileBytesBody(multipart.build());
+        return mListener == null ? body : new ProgressRequestBody(body, mListener);
+    }
+
+    /** tells {@link HttpMetrics} the size of the files and what was sent of them */
+    private class FileBytesBody extends RequestBody {
+
+        private final RequestBody mDelegate;
+
+        FileBytesBody(RequestBody delegate) {
+            this.mDelegate = delegate;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return mDelegate.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            for (FilePart part : mFiles) {
+                if (!part.file.isFile()) {
+                    // not to be retried like a network failure
+                    throw new LocalIOException("no file " + part.file);
+                }
+            }
+            mDelegate.writeTo(sink);
+            MetricsInterceptor.recordUpload(getFileBytes(), mSentFileBytes);
+        }
+    }
+
+    /** a picture, compressed while it is written unless it is small enough already */
+    private class ImageBody extends RequestBody {
+
+        private final FilePart mPart;
+        private Boolean mAsIs;
+
+        ImageBody(FilePart part) {
+            this.mPart = part;
+        }
+
+        private boolean asIs() {
+            if (mAsIs == null) {
+                mAsIs = mPart.compressor.canSendAsIs(mPart.file);
+            }
+            return mAsIs;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mPart.type;
+        }
+
+        @Override
+        public long contentLength() {
+            // the size of the compressed picture is only known after writing it
+            return asIs() ? mPart.file.length() : -1;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            if (asIs()) {
+                Source source = Okio.source(mPart.file);
+                try {
+                    mSentFileBytes += sink.writeAll(source);
+                } finally {
+                    IOUtils.closeStream(source);
+                }
+            } else {
+                mSentFileBytes += mPart.compressor.compress(mPart.file, sink.outputStream());
+            }
+        }
+    }
+}
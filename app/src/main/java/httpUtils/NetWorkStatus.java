@@ -1,38 +1,23 @@
 package httpUtils;
 
 import android.content.Context;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 
 /**
  * Created by zhangguoyu on 2015/4/3.
  */
 public class NetWorkStatus {
 
-    /**Determine whether the network is available*/
+    /**Determine whether the network is available, read from the cached {@link NetworkMonitor}*/
     public static boolean networkIsAvailable(Context context) {
-        ConnectivityManager cManager = (ConnectivityManager) context
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo info = cManager.getActiveNetworkInfo();
-        if (info == null) {
-            return false;
-        }
-        if (info.isConnected()) {
-            return true;
-        }
-        return false;
+        return NetworkMonitor.get(context).isConnected();
     }
     /**Determine whether the wifi is available*/
     public static boolean isWifiAvailable(Context context) {
-        boolean isWifiAvailable = false;
-        ConnectivityManager connectivityManager = (ConnectivityManager) context
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo activeNetInfo = connectivityManager.getActiveNetworkInfo();
-        if (activeNetInfo != null
-                && activeNetInfo.getType() == ConnectivityManager.TYPE_WIFI) {
-            isWifiAvailable = true;
-        }
-        return isWifiAvailable;
+        return NetworkMonitor.get(context).isWifi();
+    }
+    /**Determine whether the network may cost money, e.g. mobile data*/
+    public static boolean isMetered(Context context) {
+        return NetworkMonitor.get(context).isMetered();
     }
 
 }
@@ -0,0 +1,117 @@
+package httpUtils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * keeps the current network state, updated by the connectivity broadcast, so
+ * asking for it costs a volatile read instead of a ConnectivityManager binder call.
+ * created once per process by {@link #get(Context)}
+ */
+public class NetworkMonitor extends BroadcastReceiver {
+
+    /** told on the main thread when the state changed */
+    public interface Listener {
+        void onNetworkChanged(NetworkMonitor monitor);
+    }
+
+    /** {@link #getType()} when there is no active network */
+    public static final int TYPE_NONE = -1;
+
+    private static volatile NetworkMonitor sInstance;
+
+    private final ConnectivityManager mConnectivityManager;
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private volatile boolean mConnected;
+    private volatile int mType = TYPE_NONE;
+    private volatile boolean mMetered;
+
+    private NetworkMonitor(Context context) {
+        mConnectivityManager = (ConnectivityManager) context
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        refresh();
+    }
+
+    public static NetworkMonitor get(Context context) {
+        if (sInstance == null) {
+            synchronized (NetworkMonitor.class) {
+                if (sInstance == null) {
+                    Context appContext = context.getApplicationContext();
+                    if (appContext == null) {
+                        appContext = context;
+                    }
+                    NetworkMonitor monitor = new NetworkMonitor(appContext);
+                    appContext.registerReceiver(monitor,
+                            new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+                    sInstance = monitor;
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /** the monitor if {@link #get(Context)} was called already, else null */
+    public static NetworkMonitor peek() {
+        return sInstance;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        boolean wasConnected = mConnected;
+        int oldType = mType;
+        boolean wasMetered = mMetered;
+        refresh();
+        if (wasConnected != mConnected || oldType != mType || wasMetered != mMetered) {
+            for (Listener listener : mListeners) {
+                listener.onNetworkChanged(this);
+            }
+        }
+    }
+
+    /** read the state from the ConnectivityManager */
+    private void refresh() {
+        NetworkInfo info = mConnectivityManager == null ? null
+                : mConnectivityManager.getActiveNetworkInfo();
+        if (info != null && info.isConnected()) {
+            mType = info.getType();
+            mMetered = mConnectivityManager.isActiveNetworkMetered();
+            mConnected = true;
+        } else {
+            mType = TYPE_NONE;
+            mMetered = false;
+            mConnected = false;
+        }
+    }
+
+    public boolean isConnected() {
+        return mConnected;
+    }
+
+    /** ConnectivityManager.TYPE_* of the active network, or {@link #TYPE_NONE} */
+    public int getType() {
+        return mType;
+    }
+
+    public boolean isWifi() {
+        return mConnected && mType == ConnectivityManager.TYPE_WIFI;
+    }
+
+    /** the active network may cost the user money, e.g. mobile data */
+    public boolean isMetered() {
+        return mMetered;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+}
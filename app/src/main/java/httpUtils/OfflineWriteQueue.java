@@ -0,0 +1,297 @@
+package httpUtils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+/**
+ * the writes that could not be sent, kept on disk until the network is back.
+ * a {@link HttpRequest#setDeferrable deferrable} request made offline, or that got
+ * no response, is appended here and its handler gets {@link TaskHandler#onDeferred()}.
+ * the queue survives the process, it is replayed in order, one request at a time,
+ * whenever the network comes back. a write with the idempotency key of a queued
+ * one replaces it. what happened to a replayed write is told to the {@link Listener}s
+ * <p>
+ * the queue is a {@link WriteLog} of added and sent writes
+ */
+public class OfflineWriteQueue implements NetworkMonitor.Listener {
+
+    private static final String TAG = OfflineWriteQueue.class.getSimpleName();
+
+    /** told on the main thread, the handler of the request is gone by then */
+    public interface Listener {
+        /** the server answered, code is 2xx or 3xx */
+        void onSent(String idempotencyKey, int code);
+
+        /** the server refused the write with a 4xx, it is not sent again */
+        void onDropped(String idempotencyKey, int code);
+    }
+
+    /** sent with every deferrable request, so the server can ignore a second copy */
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private static final String FILE_NAME = "http_write_queue.log";
+
+    private static volatile OfflineWriteQueue sInstance;
+
+    private final Context mContext;
+    private final WriteLog mLog;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+    private final ExecutorService mExecutor;
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private boolean mReplaying;
+    private boolean mLoaded;
+
+    private OfflineWriteQueue(Context context) {
+        this.mContext = context;
+        this.mLog = new WriteLog(new File(context.getFilesDir(), FILE_NAME));
+        mExecutor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (OfflineWriteQueue.this) {
+                    load();
+                }
+                replay();
+            }
+        });
+    }
+
+    public static OfflineWriteQueue get(Context context) {
+        if (sInstance == null) {
+            synchronized (OfflineWriteQueue.class) {
+                if (sInstance == null) {
+                    Context appContext = context.getApplicationContext();
+                    if (appContext == null) {
+                        appContext = context;
+                    }
+                    OfflineWriteQueue queue = new OfflineWriteQueue(appContext);
+                    NetworkMonitor.get(appContext).addListener(queue);
+                    sInstance = queue;
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    /** writes that would make the queued ones larger than this are refused */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /** number of writes waiting for the network */
+    public synchronized int size() {
+        load();
+        return mLog.size();
+    }
+
+    /** size of the log on disk */
+    public synchronized long getDiskBytes() {
+        load();
+        return mLog.getLogBytes();
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * append the request, replacing a queued one with its idempotency key
+     * @param request a {@link HttpRequest#setDeferrable deferrable} request
+     * @return false if it would not fit or could not be written
+     */
+    boolean enqueue(HttpRequest request) {
+        WriteLog.Entry entry = new WriteLog.Entry();
+        entry.key = request.idempotencyKey;
+        entry.method = request.method;
+        entry.url = request.url;
+        entry.headers = request.headers.build();
+        try {
+            if (request.body != null) {
+                MediaType contentType = request.body.contentType();
+                entry.contentType = contentType != null ? contentType.toString() : "";
+                Buffer buffer = new Buffer();
+                request.body.writeTo(buffer);
+                entry.body = buffer.readByteArray();
+            } else {
+                entry.contentType = "";
+                entry.body = new byte[0];
+            }
+            synchronized (this) {
+                load();
+                if (!mLog.add(entry, mMaxBytes)) {
+                    Log.w(TAG, "queue full, " + entry.key + " not kept");
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "enqueue " + entry.key + " failed", e);
+            return false;
+        }
+        kick();
+        return true;
+    }
+
+    @Override
+    public void onNetworkChanged(NetworkMonitor monitor) {
+        if (monitor.isConnected()) {
+            kick();
+        }
+    }
+
+    /** start a replay unless one is running */
+    private void kick() {
+        synchronized (this) {
+            load();
+            if (mReplaying || mLog.size() == 0) {
+                return;
+            }
+            mReplaying = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        });
+    }
+
+    /** send the writes in order until the queue is empty or one fails */
+    private void replay() {
+        while (true) {
+            WriteLog.Entry entry;
+            synchronized (this) {
+                entry = mLog.first();
+                if (entry == null || !NetWorkStatus.networkIsAvailable(mContext)) {
+                    mReplaying = false;
+                    return;
+                }
+                mReplaying = true;
+            }
+            int code;
+            try {
+                Response response = OkHttpUtil.execute(entry.newRequest());
+                code = response.code();
+                IOUtils.closeStream(response.body());
+            } catch (IOException e) {
+                // the failed call is in the HttpTraceLog
+                code = RetryPolicy.NO_RESPONSE;
+            }
+            if (code == RetryPolicy.NO_RESPONSE || code >= 500 || code == 408 || code == 429) {
+                // try again when the network changes or the next write is queued
+                synchronized (this) {
+                    mReplaying = false;
+                }
+                return;
+            }
+            synchronized (this) {
+                try {
+                    mLog.done(entry);
+                } catch (IOException e) {
+                    // sent again after a restart, the idempotency key makes that harmless
+                    Log.e(TAG, "done " + entry.key + " failed", e);
+                }
+            }
+            notifyListeners(entry.key, code);
+        }
+    }
+
+    private void notifyListeners(final String key, final int code) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : mListeners) {
+                    if (code < 400) {
+                        listener.onSent(key, code);
+                    } else {
+                        listener.onDropped(key, code);
+                    }
+                }
+            }
+        });
+    }
+
+    /** read the log once */
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        try {
+            long dropped = mLog.load();
+            if (dropped > 0) {
+                Log.w(TAG, "log cut, " + dropped + " bytes dropped");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "load failed", e);
+        }
+    }
+
+    /** the idempotency keys of the queued writes, in the order they will be sent */
+    public synchronized List<String> getKeys() {
+        load();
+        return mLog.keys();
+    }
+
+    /**
+     * forget a queued write
+     * @param idempotencyKey
+     * @return false if it was not queued
+     */
+    public boolean remove(String idempotencyKey) {
+        synchronized (this) {
+            load();
+            WriteLog.Entry entry = mLog.get(idempotencyKey);
+            if (entry == null) {
+                return false;
+            }
+            try {
+                mLog.done(entry);
+            } catch (IOException e) {
+                Log.e(TAG, "remove " + idempotencyKey + " failed", e);
+            }
+            return true;
+        }
+    }
+
+    /** forget every queued write */
+    public synchronized void clear() {
+        for (String key : getKeys()) {
+            remove(key);
+        }
+    }
+}
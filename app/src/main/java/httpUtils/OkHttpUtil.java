@@ -4,29 +4,125 @@ package httpUtils;
  * Created by zhangguoyu on 2015/4/3.
  */
 
+import android.content.Context;
+
+import com.squareup.okhttp.Cache;
 import com.squareup.okhttp.Callback;
-import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.Dns;
 import com.squareup.okhttp.MediaType;
-import com.squareup.okhttp.MultipartBuilder;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
 import com.squareup.okhttp.RequestBody;
 import com.squareup.okhttp.Response;
 
-import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.message.BasicNameValuePair;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+
+import javax.net.SocketFactory;
 
 public class OkHttpUtil {
     private static final OkHttpClient mOkHttpClient = new OkHttpClient();
+    private static final CacheStatsInterceptor mCacheStats = new CacheStatsInterceptor();
+    private static final GzipRequestInterceptor mRequestCompression = new GzipRequestInterceptor();
+    private static HttpClientConfig mConfig;
     static{
-        mOkHttpClient.setConnectTimeout(30, TimeUnit.SECONDS);
-//        mOkHttpClient.setWriteTimeout(10, TimeUnit.SECONDS);
-//        mOkHttpClient.setReadTimeout(30, TimeUnit.SECONDS);
+        // outermost, so a call answered by the cache is measured too
+        mOkHttpClient.interceptors().add(new MetricsInterceptor(HttpMetrics.get()));
+        mOkHttpClient.interceptors().add(mCacheStats);
+        mOkHttpClient.interceptors().add(mRequestCompression);
+        mOkHttpClient.networkInterceptors().add(MetricsInterceptor.network);
+        mOkHttpClient.setDns(MetricsInterceptor.dns(Dns.SYSTEM));
+        mOkHttpClient.setSocketFactory(MetricsInterceptor.socketFactory(SocketFactory.getDefault()));
+        configure(new HttpClientConfig.Builder().build());
+    }
+
+    /**
+     * 设置共享client的超时、连接池、协议和dispatcher并发数。
+     * 连接池参数改变时换新池，旧池的空闲连接被关闭，正在使用的连接不受影响。
+     * @param config
+     */
+    public static synchronized void configure(HttpClientConfig config){
+        if (!config.samePool(mConfig)) {
+            ConnectionPool old = mOkHttpClient.getConnectionPool();
+            mOkHttpClient.setConnectionPool(config.newConnectionPool());
+            if (old != null) {
+                old.evictAll();
+            }
+        }
+        config.applyTo(mOkHttpClient);
+        mConfig = config;
+    }
+
+    public static synchronized HttpClientConfig getConfig(){
+        return mConfig;
+    }
+
+    /**
+     * 按config派生一个client，与共享client共用连接池、缓存和拦截器，
+     * 超时、协议和dispatcher并发数各自独立。连接池参数对派生client无效。
+     * 需要缓存时在installCache之后调用。
+     * @param config
+     * @return
+     */
+    public static synchronized OkHttpClient newClient(HttpClientConfig config){
+        OkHttpClient client = mOkHttpClient.clone();
+        client.setDispatcher(new Dispatcher());
+        config.applyTo(client);
+        return client;
+    }
+
+    /**
+     * 共享client当前连接池（空闲/活动连接）和dispatcher的快照
+     * @return
+     */
+    public static ConnectionPoolStats getPoolStats(){
+        return new ConnectionPoolStats(mOkHttpClient.getConnectionPool(),
+                mOkHttpClient.getDispatcher());
+    }
+
+    public static final long DEFAULT_CACHE_SIZE = 10 * 1024 * 1024;
+    private static final String CACHE_DIR_NAME = "http";
+
+    /**
+     * 在应用缓存目录下开启磁盘缓存，超出maxSize时按LRU淘汰。
+     * 遵循Cache-Control，过期后用ETag/Last-Modified条件请求重新验证。
+     * 建议在Application的onCreate中调用一次。
+     * @param context
+     * @param maxSize 字节
+     */
+    public static synchronized void installCache(Context context, long maxSize){
+        File dir = new File(context.getCacheDir(), CACHE_DIR_NAME);
+        mOkHttpClient.setCache(new Cache(dir, maxSize));
+    }
+
+    /**
+     * 每个host和接口的耗时（DNS/连接/TLS/首字节/总时间的分位数）和流量
+     * @return
+     */
+    public static HttpMetrics getMetrics(){
+        return HttpMetrics.get();
+    }
+
+    /**
+     * 请求体gzip压缩，默认关闭，对服务端支持的接口调用allow开启
+     * @return
+     */
+    public static GzipRequestInterceptor getRequestCompression(){
+        return mRequestCompression;
+    }
+
+    /**
+     * 缓存命中/未命中/重新验证的计数，用于统计节省的流量
+     * @return
+     */
+    public static CacheStatsInterceptor getCacheStats(){
+        return mCacheStats;
     }
     /**
      * 该步会开启异步线程。
@@ -37,6 +133,52 @@ public class OkHttpUtil {
     public static Response execute(Request request) throws IOException{
         return mOkHttpClient.newCall(request).execute();
     }
+    /**
+     * 按缓存策略执行GET请求。
+     * STALE_WHILE_REVALIDATE 先返回过期的缓存，再在后台重新验证以更新缓存。
+     * @param request
+     * @param policy
+     * @return
+     * @throws IOException
+     */
+    public static Response execute(Request request, CachePolicy policy) throws IOException{
+        Request cachedRequest = policy.apply(request.newBuilder()).build();
+        Response response = execute(cachedRequest);
+        if (policy == CachePolicy.STALE_WHILE_REVALIDATE && isStale(response)) {
+            revalidate(request);
+        }
+        return response;
+    }
+
+    /** 是否为缓存中的过期响应（OkHttp会加上 Warning: 110） */
+    private static boolean isStale(Response response){
+        if (response.networkResponse() != null || response.cacheResponse() == null) {
+            return false;
+        }
+        String warning = response.header("Warning");
+        return warning != null && warning.startsWith("110");
+    }
+
+    /**
+     * 后台发起条件请求，读完响应体以写入缓存。去掉原请求的tag（如{@link DispatchTask}），
+     * 它作为独立的调用被追踪，取消原请求也不会取消它
+     */
+    private static void revalidate(Request request){
+        Request revalidateRequest = request.newBuilder().removeHeader("Cache-Control")
+                .tag(null).build();
+        enqueue(revalidateRequest, new Callback() {
+
+            @Override
+            public void onResponse(Response response) throws IOException {
+                IOUtils.skipAll(response.body().byteStream());
+            }
+
+            @Override
+            public void onFailure(Request request, IOException e) {
+
+            }
+        });
+    }
     /**
      * 开启异步线程访问网络
      * @param request
@@ -65,8 +207,12 @@ public class OkHttpUtil {
         });
     }
     public static String getStringFromServer(String url) throws IOException{
+        return getStringFromServer(url, CachePolicy.DEFAULT);
+    }
+
+    public static String getStringFromServer(String url, CachePolicy policy) throws IOException{
         Request request = new Request.Builder().url(url).build();
-        Response response = execute(request);
+        Response response = execute(request, policy);
         if (response.isSuccessful()) {
             String responseStr = response.body().string();
             return responseStr;
@@ -111,23 +257,24 @@ public class OkHttpUtil {
      * @throws IOException
      */
     public static String postPictureToSerVer(String url,String text,String path) throws IOException {
-        RequestBody requestBody = new MultipartBuilder()
-                .type(MultipartBuilder.FORM)
-                .addPart(
-                        Headers.of("Content-Disposition", "form-data; name=\"title\""),
-                        RequestBody.create(null, text))
-                .addPart(
-                        Headers.of("Content-Disposition", "form-data; name=\"image\""),
-                        RequestBody.create(MEDIA_TYPE_PNG, new File(path)))
-                .build();
-
-        Request request = new Request.Builder()
-                .header("Authorization", "Client-ID " + IMGUR_CLIENT_ID)
-                .url(url)
-                .post(requestBody)
-                .build();
+        MultipartUpload upload = new MultipartUpload()
+                .addHeader("Authorization", "Client-ID " + IMGUR_CLIENT_ID)
+                .addField("title", text)
+                .addFile("image", new File(path), MEDIA_TYPE_PNG);
+        return postMultipart(url, upload);
+    }
 
-        Response response = execute(request);
+    /**
+     * 同步上传表单字段和文件，文件边发送边从磁盘读取，不整体读入内存
+     * @param url
+     * @param upload
+     * @return
+     * @throws IOException
+     */
+    public static String postMultipart(String url, MultipartUpload upload) throws IOException {
+        Request.Builder builder = new Request.Builder().url(url);
+        upload.applyTo(builder);
+        Response response = execute(builder.build());
         if (response.isSuccessful()) {
             String responseUrl = response.body().string();
             return responseUrl;
@@ -136,14 +283,26 @@ public class OkHttpUtil {
         }
     }
 
-    private static final String CHARSET_NAME = "UTF-8";
     /**
-     * 这里使用了HttpClinet的API。只是为了方便
+     * 按 application/x-www-form-urlencoded 编码参数，直接写入线程复用的缓冲区，见{@link FormEncoder}
      * @param params
      * @return
      */
     public static String formatParams(List<BasicNameValuePair> params){
-        return URLEncodedUtils.format(params, CHARSET_NAME);
+        StringBuilder sb = FormEncoder.buffer();
+        for (BasicNameValuePair pair : params) {
+            FormEncoder.appendPair(sb, pair.getName(), pair.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按 application/x-www-form-urlencoded 编码参数
+     * @param params
+     * @return
+     */
+    public static String formatParams(Map<String, String> params){
+        return FormEncoder.format(params);
     }
     /**
      * 为HttpGet 的 url 方便的添加多个name value 参数。
@@ -152,7 +311,24 @@ public class OkHttpUtil {
      * @return
      */
     public static String attachHttpGetParams(String url, List<BasicNameValuePair> params){
-        return url + "?" + formatParams(params);
+        StringBuilder sb = FormEncoder.buffer().append(url);
+        if (url.indexOf('?') < 0) {
+            sb.append('?');
+        }
+        for (BasicNameValuePair pair : params) {
+            FormEncoder.appendPair(sb, pair.getName(), pair.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 为HttpGet 的 url 方便的添加多个name value 参数，url已有参数时追加在其后。
+     * @param url
+     * @param params
+     * @return
+     */
+    public static String attachHttpGetParams(String url, Map<String, String> params){
+        return FormEncoder.attach(url, params);
     }
     /**
      * 为HttpGet 的 url 方便的添加1个name value 参数。
@@ -162,7 +338,20 @@ public class OkHttpUtil {
      * @return
      */
     public static String attachHttpGetParam(String url, String name, String value){
-        return url + "?" + name + "=" + value;
+        StringBuilder sb = FormEncoder.buffer().append(url);
+        if (url.indexOf('?') < 0) {
+            sb.append('?');
+        }
+        FormEncoder.appendPair(sb, name, value);
+        return sb.toString();
+    }
+
+    /**
+     * 取消tag对应的所有请求（排队中的和正在执行的）
+     * @param tag
+     */
+    public static void cancel(Object tag){
+        mOkHttpClient.cancel(tag);
     }
 
     public static OkHttpClient getmOkHttpClient(){
@@ -0,0 +1,90 @@
+package httpUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * how long response parsing takes on the main thread ({@link TaskHandler#parseResult(String)})
+ * and on the worker threads ({@link ReaderTaskHandler}), see {@link #get()}
+ */
+public class ParseStats {
+
+    /** a main thread parse longer than this makes the frame late */
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+
+    private static final ParseStats sInstance = new ParseStats();
+
+    private long mMainThreadCount;
+    private long mMainThreadNanos;
+    private long mMainThreadMaxNanos;
+    private long mMainThreadOverFrameCount;
+    private long mWorkerCount;
+    private long mWorkerNanos;
+    private long mWorkerMaxNanos;
+
+    public static ParseStats get() {
+        return sInstance;
+    }
+
+    synchronized void recordMainThread(long nanos) {
+        mMainThreadCount++;
+        mMainThreadNanos += nanos;
+        mMainThreadMaxNanos = Math.max(mMainThreadMaxNanos, nanos);
+        if (nanos > FRAME_NANOS) {
+            mMainThreadOverFrameCount++;
+        }
+    }
+
+    /** the time includes reading the body, the parser pulls it from the network */
+    synchronized void recordWorker(long nanos) {
+        mWorkerCount++;
+        mWorkerNanos += nanos;
+        mWorkerMaxNanos = Math.max(mWorkerMaxNanos, nanos);
+    }
+
+    public synchronized long getMainThreadCount() {
+        return mMainThreadCount;
+    }
+
+    public synchronized long getMainThreadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mMainThreadNanos);
+    }
+
+    public synchronized long getMainThreadMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mMainThreadMaxNanos);
+    }
+
+    /** main thread parses that took longer than one frame (16 ms) */
+    public synchronized long getMainThreadOverFrameCount() {
+        return mMainThreadOverFrameCount;
+    }
+
+    public synchronized long getWorkerCount() {
+        return mWorkerCount;
+    }
+
+    public synchronized long getWorkerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mWorkerNanos);
+    }
+
+    public synchronized long getWorkerMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mWorkerMaxNanos);
+    }
+
+    public synchronized void reset() {
+        mMainThreadCount = 0;
+        mMainThreadNanos = 0;
+        mMainThreadMaxNanos = 0;
+        mMainThreadOverFrameCount = 0;
+        mWorkerCount = 0;
+        mWorkerNanos = 0;
+        mWorkerMaxNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ParseStats{main=" + mMainThreadCount + "/" + getMainThreadMillis() + "ms"
+                + " max=" + getMainThreadMaxMillis() + "ms overFrame=" + mMainThreadOverFrameCount
+                + ", worker=" + mWorkerCount + "/" + getWorkerMillis() + "ms"
+                + " max=" + getWorkerMaxMillis() + "ms}";
+    }
+}
@@ -0,0 +1,15 @@
+package httpUtils;
+
+/**
+ * progress of an upload or a download, called on the main thread at most every
+ * {@link ProgressRequestBody#MIN_INTERVAL_MS} ms and once more when done
+ */
+public interface ProgressListener {
+
+    /**
+     * @param bytesWritten bytes sent or received so far
+     * @param contentLength bytes in total, -1 if unknown
+     */
+    void onProgress(long bytesWritten, long contentLength);
+
+}
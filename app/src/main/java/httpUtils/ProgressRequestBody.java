@@ -0,0 +1,89 @@
+package httpUtils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.RequestBody;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * a {@link RequestBody} that reports the bytes written by its delegate to a
+ * {@link ProgressListener}, throttled and on the main thread
+ */
+public class ProgressRequestBody extends RequestBody {
+
+    public static final long MIN_INTERVAL_MS = 100;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final RequestBody mDelegate;
+    private final ProgressListener mListener;
+    private final long mOffset;
+    private final long mTotal;
+
+    public ProgressRequestBody(RequestBody delegate, ProgressListener listener) throws IOException {
+        this(delegate, listener, 0, delegate.contentLength());
+    }
+
+    /**
+     * for one part of a larger upload
+     * @param delegate
+     * @param listener
+     * @param offset bytes of the upload sent before this body
+     * @param total bytes of the whole upload
+     */
+    public ProgressRequestBody(RequestBody delegate, ProgressListener listener, long offset, long total) {
+        this.mDelegate = delegate;
+        this.mListener = listener;
+        this.mOffset = offset;
+        this.mTotal = total;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mDelegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return mDelegate.contentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        BufferedSink counting = Okio.buffer(new ForwardingSink(sink) {
+            private long mWritten;
+            private long mLastReport;
+
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                mWritten += byteCount;
+                long now = SystemClock.uptimeMillis();
+                if (now - mLastReport >= MIN_INTERVAL_MS || mOffset + mWritten == mTotal) {
+                    mLastReport = now;
+                    report(mOffset + mWritten);
+                }
+            }
+        });
+        mDelegate.writeTo(counting);
+        counting.flush();
+    }
+
+    private void report(final long written) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onProgress(written, mTotal);
+            }
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package httpUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * a {@link TaskHandler} that parses the response body from a {@link Reader},
+ * so a large body never becomes one String. {@link #parseResult(Reader)} is
+ * called on the worker thread, {@link #onSuccess(Object)} still on the main thread.
+ */
+public abstract class ReaderTaskHandler<T> extends TaskHandler<T> {
+
+	/**
+	 * parse the body while it is read from the network, the Reader is closed by the caller
+	 *
+	 * @param reader
+	 */
+	public abstract T parseResult(Reader reader) throws IOException;
+
+	@Override
+	public T parseResult(String result) {
+		try {
+			return parseResult(new StringReader(result));
+		} catch (IOException e) {
+			// a StringReader does not throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,499 @@
+package httpUtils;
+
+import android.os.Process;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * run the tasks of {@link HttpAsyncTaskManager} on an own worker pool instead of
+ * the serial AsyncTask executor. queued tasks start by {@link Priority}, and no
+ * more than {@link #getMaxRequestsPerHost()} tasks run against one host.
+ * an immediate task that finds no free worker takes one from a running prefetch
+ * or idle task, which is aborted and queued again
+ */
+public class RequestDispatcher implements NetworkMonitor.Listener {
+
+    private static final String TAG = RequestDispatcher.class.getSimpleName();
+
+    /** a task leaves the queue before the tasks of the classes after it */
+    public enum Priority {
+        /** what the user is waiting for, may abort a prefetch to get a worker */
+        IMMEDIATE,
+        NORMAL,
+        /** does not start while immediate or normal tasks wait, nor on a metered network */
+        PREFETCH,
+        /** starts only when no immediate or normal task is queued or running */
+        IDLE
+    }
+
+    public static final int DEFAULT_MAX_REQUESTS = 8;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+
+    private static RequestDispatcher sDefault;
+
+    private final ThreadPoolExecutor mExecutor;
+    /** only waits out retry backoffs, never runs a request */
+    private final ScheduledThreadPoolExecutor mRetryTimer;
+    /** waiting tasks, one queue per {@link Priority} */
+    private final ArrayDeque<DispatchTask<?>>[] mReadyTasks;
+    private final Map<String, Integer> mRunningPerHost = new HashMap<String, Integer>();
+    /** requests by tag, for {@link #cancelAll(Object)} */
+    private final Map<Object, List<RequestHandle>> mTagged = new HashMap<Object, List<RequestHandle>>();
+    private int mRunningCount;
+    private final int[] mRunningPerPriority = new int[Priority.values().length];
+    private final List<DispatchTask<?>> mRunningTasks = new ArrayList<DispatchTask<?>>();
+    /** running tasks that were aborted for an immediate one and did not end yet */
+    private int mPreemptingCount;
+    private long mPreemptedCount;
+    private boolean mPausePrefetchOnMetered = true;
+    private int mWaitingRetryCount;
+    /** tasks queued while offline that wait for the network */
+    private final List<DispatchTask<?>> mParkedTasks = new ArrayList<DispatchTask<?>>();
+    private boolean mListening;
+    private int mMaxRequests;
+    private int mMaxRequestsPerHost;
+
+    @SuppressWarnings("unchecked")
+    public RequestDispatcher(int maxRequests, int maxRequestsPerHost) {
+        if (maxRequests < 1 || maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("max < 1");
+        }
+        this.mMaxRequests = maxRequests;
+        this.mMaxRequestsPerHost = maxRequestsPerHost;
+        mReadyTasks = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < mReadyTasks.length; i++) {
+            mReadyTasks[i] = new ArrayDeque<DispatchTask<?>>();
+        }
+        mExecutor = new ThreadPoolExecutor(maxRequests, maxRequests, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+        mRetryTimer = new ScheduledThreadPoolExecutor(1, new WorkerFactory());
+    }
+
+    /** the dispatcher shared by every {@link HttpAsyncTaskManager} created without one */
+    public static synchronized RequestDispatcher getDefault() {
+        if (sDefault == null) {
+            sDefault = new RequestDispatcher(DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST);
+        }
+        return sDefault;
+    }
+
+    /**
+     * queue a task, {@link DispatchTask#onPreExecute()} is called on the caller thread
+     * like AsyncTask#execute
+     * @param task
+     */
+    void enqueue(DispatchTask<?> task) {
+        task.dispatcher = this;
+        task.onPreExecute();
+        NetworkMonitor monitor = NetworkMonitor.peek();
+        synchronized (this) {
+            if (task.parkWhenOffline && monitor != null && !monitor.isConnected()) {
+                mParkedTasks.add(task);
+                listen(monitor);
+                return;
+            }
+            mReadyTasks[task.priority.ordinal()].add(task);
+            if (task.priority == Priority.PREFETCH && mPausePrefetchOnMetered) {
+                listen(monitor);
+            }
+        }
+        promote();
+    }
+
+    /** be told when the network changes, to resume parked and paused tasks */
+    private void listen(NetworkMonitor monitor) {
+        if (!mListening && monitor != null) {
+            monitor.addListener(this);
+            mListening = true;
+        }
+    }
+
+    /** replay the parked tasks once the network is back, start the paused prefetches off a metered network */
+    @Override
+    public void onNetworkChanged(NetworkMonitor monitor) {
+        if (!monitor.isConnected()) {
+            return;
+        }
+        synchronized (this) {
+            for (DispatchTask<?> task : mParkedTasks) {
+                mReadyTasks[task.priority.ordinal()].add(task);
+            }
+            mParkedTasks.clear();
+        }
+        promote();
+    }
+
+    /**
+     * queue a task again after the delay, without onPreExecute
+     * @param task
+     * @param delayMillis
+     */
+    void retryLater(final DispatchTask<?> task, long delayMillis) {
+        synchronized (this) {
+            mWaitingRetryCount++;
+        }
+        mRetryTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (RequestDispatcher.this) {
+                    mWaitingRetryCount--;
+                    if (task.isCanceled()) {
+                        return;
+                    }
+                    mReadyTasks[task.priority.ordinal()].add(task);
+                }
+                promote();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * run the action on the timer after the delay, e.g. the deadline of a request
+     * @param action
+     * @param delayMillis
+     * @return cancel it if the action is not needed anymore
+     */
+    ScheduledFuture<?> schedule(Runnable action, long delayMillis) {
+        return mRetryTimer.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** queue a preempted task again, ahead of the others of its class */
+    void requeue(DispatchTask<?> task) {
+        synchronized (this) {
+            if (task.isCanceled()) {
+                return;
+            }
+            mReadyTasks[task.priority.ordinal()].addFirst(task);
+        }
+        promote();
+    }
+
+    /**
+     * change the priority of a request, e.g. of a prefetch that became visible.
+     * a queued request moves to the end of the queue of its new class, a running one
+     * keeps running but is not preempted anymore if it became immediate or normal
+     * @param handle returned by a request method of {@link HttpAsyncTaskManager}
+     * @param priority
+     * @return false if the request was canceled or is no task of this dispatcher
+     */
+    public boolean setPriority(RequestHandle handle, Priority priority) {
+        DispatchTask<?> task = null;
+        if (handle instanceof DispatchTask) {
+            task = (DispatchTask<?>) handle;
+        } else if (handle instanceof SingleFlight.Member) {
+            task = ((SingleFlight.Member) handle).flight.task;
+        }
+        if (task == null || task.dispatcher != this || task.isCanceled()) {
+            return false;
+        }
+        synchronized (this) {
+            if (task.priority == priority) {
+                return true;
+            }
+            if (mReadyTasks[task.priority.ordinal()].remove(task)) {
+                task.priority = priority;
+                mReadyTasks[priority.ordinal()].add(task);
+            } else if (mRunningTasks.contains(task)) {
+                mRunningPerPriority[task.priority.ordinal()]--;
+                mRunningPerPriority[priority.ordinal()]++;
+                task.priority = priority;
+            } else {
+                // parked, waiting out a retry backoff or done: queued again with the new priority
+                task.priority = priority;
+            }
+        }
+        promote();
+        return true;
+    }
+
+    /** drop a canceled task that is still queued */
+    void cancel(DispatchTask<?> task) {
+        synchronized (this) {
+            mReadyTasks[task.priority.ordinal()].remove(task);
+            mParkedTasks.remove(task);
+        }
+        unregister(task.tag, task);
+    }
+
+    /** add a request to the group of the tag, a null tag is no group */
+    synchronized void register(Object tag, RequestHandle handle) {
+        if (tag == null) {
+            return;
+        }
+        List<RequestHandle> handles = mTagged.get(tag);
+        if (handles == null) {
+            handles = new ArrayList<RequestHandle>();
+            mTagged.put(tag, handles);
+        }
+        handles.add(handle);
+    }
+
+    /** remove a finished or canceled request from its group */
+    synchronized void unregister(Object tag, RequestHandle handle) {
+        if (tag == null) {
+            return;
+        }
+        List<RequestHandle> handles = mTagged.get(tag);
+        if (handles != null && handles.remove(handle) && handles.isEmpty()) {
+            mTagged.remove(tag);
+        }
+    }
+
+    /**
+     * cancel every request of the tag, e.g. in Activity#onDestroy for the requests
+     * made with {@code manager.withTag(activity)}
+     * @param tag
+     */
+    public void cancelAll(Object tag) {
+        List<RequestHandle> handles;
+        synchronized (this) {
+            handles = mTagged.remove(tag);
+        }
+        if (handles != null) {
+            for (RequestHandle handle : handles) {
+                handle.cancel();
+            }
+        }
+    }
+
+    /** called by the worker when {@link DispatchTask#doInBackground()} returns */
+    void finished(DispatchTask<?> task) {
+        synchronized (this) {
+            mRunningCount--;
+            mRunningPerPriority[task.priority.ordinal()]--;
+            mRunningTasks.remove(task);
+            if (task.isPreempted()) {
+                mPreemptingCount--;
+            }
+            Integer running = mRunningPerHost.get(task.host);
+            if (running == null || running <= 1) {
+                mRunningPerHost.remove(task.host);
+            } else {
+                mRunningPerHost.put(task.host, running - 1);
+            }
+        }
+        promote();
+    }
+
+    /** move as many ready tasks to the pool as the limits allow */
+    private void promote() {
+        List<DispatchTask<?>> startable = new ArrayList<DispatchTask<?>>();
+        List<DispatchTask<?>> preempted = new ArrayList<DispatchTask<?>>();
+        synchronized (this) {
+            boolean higherWaiting = false;
+            for (Priority priority : Priority.values()) {
+                ArrayDeque<DispatchTask<?>> queue = mReadyTasks[priority.ordinal()];
+                if (!mayStart(priority, higherWaiting)) {
+                    higherWaiting |= !queue.isEmpty();
+                    continue;
+                }
+                Iterator<DispatchTask<?>> it = queue.iterator();
+                while (it.hasNext() && mRunningCount < mMaxRequests) {
+                    DispatchTask<?> task = it.next();
+                    Integer running = mRunningPerHost.get(task.host);
+                    if (running != null && running >= mMaxRequestsPerHost) {
+                        continue;
+                    }
+                    it.remove();
+                    mRunningCount++;
+                    mRunningPerPriority[priority.ordinal()]++;
+                    mRunningTasks.add(task);
+                    mRunningPerHost.put(task.host, running == null ? 1 : running + 1);
+                    startable.add(task);
+                }
+                higherWaiting |= !queue.isEmpty();
+            }
+            preempt(preempted);
+        }
+        for (DispatchTask<?> task : startable) {
+            mExecutor.execute(task);
+        }
+        for (DispatchTask<?> task : preempted) {
+            task.abort();
+        }
+    }
+
+    /** lower classes starve while higher ones wait, a prefetch also on a metered network */
+    private boolean mayStart(Priority priority, boolean higherWaiting) {
+        switch (priority) {
+            case PREFETCH:
+                return !higherWaiting && !isPrefetchPaused();
+            case IDLE:
+                return !higherWaiting
+                        && mRunningPerPriority[Priority.IMMEDIATE.ordinal()] == 0
+                        && mRunningPerPriority[Priority.NORMAL.ordinal()] == 0;
+            default:
+                return true;
+        }
+    }
+
+    private boolean isPrefetchPaused() {
+        if (!mPausePrefetchOnMetered) {
+            return false;
+        }
+        // the state NetWorkStatus reads too, without needing a Context here
+        NetworkMonitor monitor = NetworkMonitor.peek();
+        return monitor != null && monitor.isMetered();
+    }
+
+    /**
+     * pick running prefetch or idle tasks to abort for the immediate tasks that are
+     * still queued: one of the same host if that host is full, else any if the pool is
+     */
+    private void preempt(List<DispatchTask<?>> preempted) {
+        ArrayDeque<DispatchTask<?>> immediate = mReadyTasks[Priority.IMMEDIATE.ordinal()];
+        int needed = immediate.size() - mPreemptingCount;
+        for (DispatchTask<?> waiting : immediate) {
+            if (needed <= 0) {
+                return;
+            }
+            Integer running = mRunningPerHost.get(waiting.host);
+            boolean hostFull = running != null && running >= mMaxRequestsPerHost;
+            if (!hostFull && mRunningCount < mMaxRequests) {
+                continue;
+            }
+            DispatchTask<?> victim = null;
+            for (DispatchTask<?> task : mRunningTasks) {
+                if (task.priority.compareTo(Priority.PREFETCH) < 0 || task.isPreempted()
+                        || hostFull && !task.host.equals(waiting.host)) {
+                    continue;
+                }
+                // an idle task goes first, the newest of its class
+                if (victim == null || task.priority.compareTo(victim.priority) >= 0) {
+                    victim = task;
+                }
+            }
+            if (victim != null) {
+                victim.markPreempted();
+                mPreemptingCount++;
+                mPreemptedCount++;
+                preempted.add(victim);
+                needed--;
+            }
+        }
+    }
+
+    /**
+     * do not start prefetch tasks while the network is metered, see {@link NetworkMonitor#isMetered()}.
+     * on by default
+     * @param pause
+     */
+    public void setPausePrefetchOnMetered(boolean pause) {
+        synchronized (this) {
+            mPausePrefetchOnMetered = pause;
+            if (pause) {
+                listen(NetworkMonitor.peek());
+            }
+        }
+        promote();
+    }
+
+    public synchronized boolean isPausePrefetchOnMetered() {
+        return mPausePrefetchOnMetered;
+    }
+
+    /** number of running tasks aborted to make room for an immediate one */
+    public synchronized long getPreemptedCount() {
+        return mPreemptedCount;
+    }
+
+    /** number of tasks of the priority in flight */
+    public synchronized int getRunningCount(Priority priority) {
+        return mRunningPerPriority[priority.ordinal()];
+    }
+
+    public synchronized void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxRequests);
+        }
+        if (maxRequests > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(maxRequests);
+            mExecutor.setCorePoolSize(maxRequests);
+        } else {
+            mExecutor.setCorePoolSize(maxRequests);
+            mExecutor.setMaximumPoolSize(maxRequests);
+        }
+        this.mMaxRequests = maxRequests;
+        promote();
+    }
+
+    public synchronized int getMaxRequests() {
+        return mMaxRequests;
+    }
+
+    public synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("max < 1: " + maxRequestsPerHost);
+        }
+        this.mMaxRequestsPerHost = maxRequestsPerHost;
+        promote();
+    }
+
+    public synchronized int getMaxRequestsPerHost() {
+        return mMaxRequestsPerHost;
+    }
+
+    /** number of tasks waiting for a worker */
+    public synchronized int getQueuedCount() {
+        int count = 0;
+        for (ArrayDeque<DispatchTask<?>> queue : mReadyTasks) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /** number of tasks of the priority waiting for a worker */
+    public synchronized int getQueuedCount(Priority priority) {
+        return mReadyTasks[priority.ordinal()].size();
+    }
+
+    /** number of tasks waiting for the network to come back */
+    public synchronized int getParkedCount() {
+        return mParkedTasks.size();
+    }
+
+    /** number of tasks waiting out a retry backoff */
+    public synchronized int getWaitingRetryCount() {
+        return mWaitingRetryCount;
+    }
+
+    /** number of tasks in flight */
+    public synchronized int getRunningCount() {
+        return mRunningCount;
+    }
+
+    /** number of tasks in flight against the host */
+    public synchronized int getRunningCount(String host) {
+        Integer running = mRunningPerHost.get(host);
+        return running == null ? 0 : running;
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, TAG + " #" + mCount.getAndIncrement());
+        }
+    }
+}
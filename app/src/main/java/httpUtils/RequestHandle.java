@@ -0,0 +1,17 @@
+package httpUtils;
+
+/**
+ * returned by the request methods of {@link HttpAsyncTaskManager}, cancel
+ * one request with it, or a group with {@link RequestDispatcher#cancelAll(Object)}
+ */
+public interface RequestHandle {
+
+    /**
+     * stop the request: a queued one is dropped, a running one has its
+     * OkHttp call aborted. no callback of the handler is called afterwards
+     */
+    void cancel();
+
+    boolean isCanceled();
+
+}
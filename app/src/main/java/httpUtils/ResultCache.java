@@ -0,0 +1,298 @@
+package httpUtils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * the parsed results of GET requests kept in memory, so a repeated request is answered
+ * without reading and parsing the body again. see {@link HttpRequest#setResultTtl}:
+ * a fresh result is delivered without a request, a stale one is delivered at once
+ * and refreshed in the background. the least recently used results are dropped
+ * when their estimated size is over {@link #getMaxBytes()}, and on onTrimMemory.
+ * the same object is given to every handler and stays cached, a handler must not
+ * change it: a modified JSONArray would reach later callers and make a refresh
+ * look unchanged. copy it first, or parse into immutable results
+ */
+public class ResultCache implements ComponentCallbacks2 {
+
+    /** the size of a result that {@link #estimate} can't walk and with no body length */
+    private static final long UNKNOWN_BYTES = 1024;
+
+    private static final ResultCache sInstance = new ResultCache(defaultMaxBytes());
+
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long mMaxBytes;
+    private long mBytes;
+    private boolean mRegistered;
+    private long mHitCount;
+    private long mStaleHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+    private long mUnchangedCount;
+
+    /** a result with its estimated size and when it stops being fresh */
+    static class Entry {
+        final Object value;
+        final long bytes;
+        final long expiresAt;
+
+        private Entry(Object value, long bytes, long expiresAt) {
+            this.value = value;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isFresh() {
+            return SystemClock.elapsedRealtime() < expiresAt;
+        }
+    }
+
+    public ResultCache(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+
+    public static ResultCache get() {
+        return sInstance;
+    }
+
+    /** 1/32 of the heap, at most 8 MB */
+    private static long defaultMaxBytes() {
+        return Math.min(Runtime.getRuntime().maxMemory() / 32, 8 * 1024 * 1024);
+    }
+
+    /** be told of onTrimMemory, done by {@link HttpAsyncTaskManager} */
+    public void register(Context context) {
+        synchronized (this) {
+            if (mRegistered) {
+                return;
+            }
+            mRegistered = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(this);
+    }
+
+    /**
+     * the key of a GET: the url, the headers and the class of the handler,
+     * handlers of different classes parse the same body into different results
+     */
+    static String key(String url, String headers, TaskHandler handler) {
+        StringBuilder sb = new StringBuilder("GET ").append(url);
+        if (headers.length() > 0) {
+            sb.append(" #").append(headers.hashCode());
+        }
+        return sb.append(' ').append(handler.getClass().getName()).toString();
+    }
+
+    /** the result for the key, fresh or stale, or null */
+    synchronized Entry lookup(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+        } else if (entry.isFresh()) {
+            mHitCount++;
+        } else {
+            mStaleHitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * keep the result of a request
+     * @param key
+     * @param value
+     * @param bodyBytes the length of the body it was parsed from, -1 if unknown.
+     *                  used as the size if the value is not made of lists, maps and strings
+     * @param ttlMillis how long it is fresh
+     */
+    void put(String key, Object value, long bodyBytes, long ttlMillis) {
+        if (value == null) {
+            return;
+        }
+        long bytes = estimate(value);
+        if (bytes < 0) {
+            bytes = bodyBytes > 0 ? bodyBytes * 2 : UNKNOWN_BYTES;
+        }
+        Entry entry = new Entry(value, bytes, SystemClock.elapsedRealtime() + ttlMillis);
+        synchronized (this) {
+            Entry old = mEntries.remove(key);
+            if (old != null) {
+                mBytes -= old.bytes;
+            }
+            if (bytes > mMaxBytes) {
+                return;
+            }
+            mEntries.put(key, entry);
+            mBytes += bytes;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * @return true if a refreshed result is different from the cached one, by equals().
+     * a result class that doesn't implement it counts as changed
+     */
+    boolean changed(Object cached, Object refreshed) {
+        if (cached == null ? refreshed != null : !cached.equals(refreshed)) {
+            return true;
+        }
+        synchronized (this) {
+            mUnchangedCount++;
+        }
+        return false;
+    }
+
+    public synchronized void remove(String url) {
+        Iterator<Map.Entry<String, Entry>> it = mEntries.entrySet().iterator();
+        String prefix = "GET " + url + " ";
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                mBytes -= e.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    /** drop the least recently used results until the rest is at most maxBytes */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (mBytes > maxBytes && it.hasNext()) {
+            mBytes -= it.next().bytes;
+            it.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /** estimated size of the results kept */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /** requests answered by a fresh result */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /** requests answered by a stale result and refreshed */
+    public synchronized long getStaleHitCount() {
+        return mStaleHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /** refreshes that got the result already delivered, the handler was not called again */
+    public synchronized long getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(getMaxBytes() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * rough heap size of a parsed result made of maps, collections, arrays, strings,
+     * numbers and booleans, as fastjson's JSONObject and JSONArray are
+     * @param value
+     * @return the bytes, -1 if it has other objects
+     */
+    static long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + 2 * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+        if (value instanceof Map) {
+            long bytes = 48;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                long key = estimate(e.getKey());
+                long item = estimate(e.getValue());
+                if (key < 0 || item < 0) {
+                    return -1;
+                }
+                bytes += 32 + key + item;
+            }
+            return bytes;
+        }
+        if (value instanceof Collection) {
+            long bytes = 40;
+            for (Object o : (Collection<?>) value) {
+                long item = estimate(o);
+                if (item < 0) {
+                    return -1;
+                }
+                bytes += 8 + item;
+            }
+            return bytes;
+        }
+        if (value instanceof Object[]) {
+            long bytes = 16;
+            for (Object o : (Object[]) value) {
+                long item = estimate(o);
+                if (item < 0) {
+                    return -1;
+                }
+                bytes += 8 + item;
+            }
+            return bytes;
+        }
+        if (value.getClass().isArray()) {
+            // other primitive arrays, at most 8 bytes an element
+            return 16 + 8L * Array.getLength(value);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,203 @@
+package httpUtils;
+
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+import com.squareup.okhttp.Response;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSink;
+
+/**
+ * a large file sent in chunks, for {@link HttpAsyncTaskManager#requestResumableUpload}.
+ * after a dropped connection only the bytes the server does not have yet are sent again.
+ * <p>
+ * the server side follows the Content-Range protocol of resumable uploads:
+ * <ul>
+ * <li>every chunk is a PUT with {@value #HEADER_UPLOAD_ID} and
+ * {@code Content-Range: bytes first-last/total}</li>
+ * <li>the server answers 308 with {@code Range: bytes=0-last} while bytes are missing,
+ * and 2xx with the result once it has them all</li>
+ * <li>a PUT without body and {@code Content-Range: bytes *}{@code /total} asks how
+ * far the server got</li>
+ * </ul>
+ */
+public class ResumableUpload {
+
+    public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+    public static final String HEADER_UPLOAD_ID = "X-Upload-Id";
+    /** "Resume Incomplete", the server wants more bytes */
+    static final int RESUME_INCOMPLETE = 308;
+
+    private final File mFile;
+    private final MediaType mType;
+    private final List<String[]> mHeaders = new ArrayList<String[]>();
+    private int mChunkSize = DEFAULT_CHUNK_SIZE;
+    private String mUploadId;
+    private ProgressListener mListener;
+    /** bytes the server has confirmed */
+    private volatile long mOffset;
+
+    public ResumableUpload(File file, MediaType type) {
+        this.mFile = file;
+        this.mType = type;
+        // the same file gets the same id after a restart of the app, so it resumes too
+        this.mUploadId = Integer.toHexString(file.getAbsolutePath().hashCode())
+                + '-' + Long.toHexString(file.length())
+                + '-' + Long.toHexString(file.lastModified());
+    }
+
+    public ResumableUpload setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize <= 0");
+        }
+        this.mChunkSize = chunkSize;
+        return this;
+    }
+
+    /** by default the id is made from the path, size and modification time of the file */
+    public ResumableUpload setUploadId(String uploadId) {
+        this.mUploadId = uploadId;
+        return this;
+    }
+
+    public ResumableUpload addHeader(String name, String value) {
+        mHeaders.add(new String[]{name, value});
+        return this;
+    }
+
+    /** called on the main thread while chunks are sent */
+    public ResumableUpload setProgressListener(ProgressListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    public String getUploadId() {
+        return mUploadId;
+    }
+
+    /** bytes the server has confirmed so far */
+    public long getConfirmedBytes() {
+        return mOffset;
+    }
+
+    /**
+     * send what the server is missing, one chunk per call. asks for the server's
+     * offset first, so an attempt after a failure does not send bytes twice
+     * @param task gives the requests their tag
+     * @return the last response: 2xx when the server has the whole file,
+     * or the error response that stopped the upload
+     * @throws IOException the connection failed, the next call resumes
+     */
+    Response execute(DispatchTask<?> task) throws IOException {
+        long total = mFile.length();
+        Response response = send(task, "bytes */" + total,
+                RequestBody.create(mType, new byte[0]));
+        while (response.code() == RESUME_INCOMPLETE) {
+            mOffset = confirmedBytes(response);
+            IOUtils.closeStream(response.body());
+            if (mOffset >= total) {
+                // all bytes are there but the server wants more, do not loop forever
+                throw new IOException("upload " + mUploadId + " not completed by the server");
+            }
+            long length = Math.min(mChunkSize, total - mOffset);
+            RequestBody body = new FileChunkBody(mType, mFile, mOffset, length);
+            if (mListener != null) {
+                body = new ProgressRequestBody(body, mListener, mOffset, total);
+            }
+            response = send(task, "bytes " + mOffset + '-' + (mOffset + length - 1) + '/' + total, body);
+        }
+        if (response.isSuccessful()) {
+            mOffset = total;
+        }
+        return response;
+    }
+
+    private Response send(DispatchTask<?> task, String contentRange, RequestBody body) throws IOException {
+        Request.Builder builder = task.newRequest();
+        for (String[] header : mHeaders) {
+            builder.header(header[0], header[1]);
+        }
+        Request request = builder
+                .header(HEADER_UPLOAD_ID, mUploadId)
+                .header("Content-Range", contentRange)
+                .put(body)
+                .build();
+        return OkHttpUtil.execute(request);
+    }
+
+    /** the end of {@code Range: bytes=0-last} plus one, 0 without the header */
+    private static long confirmedBytes(Response response) throws IOException {
+        String range = response.header("Range");
+        if (range == null) {
+            return 0;
+        }
+        int dash = range.lastIndexOf('-');
+        try {
+            return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+        } catch (NumberFormatException e) {
+            throw new IOException("bad Range header: " + range);
+        }
+    }
+
+    /** a part of a file, read while it is written */
+    private static class FileChunkBody extends RequestBody {
+
+        private final MediaType mType;
+        private final File mFile;
+        private final long mOffset;
+        private final long mLength;
+
+        FileChunkBody(MediaType type, File file, long offset, long length) {
+            this.mType = type;
+            this.mFile = file;
+            this.mOffset = offset;
+            this.mLength = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mLength;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            InputStream in = new FileInputStream(mFile);
+            byte[] buf = ByteArrayPool.get().getBuf(IOUtils.MIN_SEGMENT_SIZE);
+            try {
+                long skip = mOffset;
+                while (skip > 0) {
+                    long n = in.skip(skip);
+                    if (n <= 0) {
+                        throw new EOFException(mFile + " is shorter than " + mOffset);
+                    }
+                    skip -= n;
+                }
+                long remaining = mLength;
+                while (remaining > 0) {
+                    int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                    if (n == -1) {
+                        throw new EOFException(mFile + " changed during the upload");
+                    }
+                    sink.write(buf, 0, n);
+                    remaining -= n;
+                }
+            } finally {
+                ByteArrayPool.get().returnBuf(buf);
+                IOUtils.closeStream(in);
+            }
+        }
+    }
+}
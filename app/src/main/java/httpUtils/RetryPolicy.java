@@ -0,0 +1,104 @@
+package httpUtils;
+
+import java.util.Random;
+
+/**
+ * when and how late a failed request is tried again, attach it with
+ * {@link HttpAsyncTaskManager#withRetryPolicy(RetryPolicy)}.
+ * the n-th retry waits backoff * 2^(n-1), capped at {@link #setMaxBackoff(long)},
+ * plus a random jitter. POST is only retried if {@link #setRetryPost(boolean)} says
+ * the server handles it idempotently.
+ */
+public class RetryPolicy {
+
+    /** status passed for a failure without a response, e.g. a timeout or a reset connection */
+    public static final int NO_RESPONSE = -1;
+
+    private static final int[] DEFAULT_RETRYABLE_CODES = {408, 429, 500, 502, 503, 504};
+
+    private static final Random sRandom = new Random();
+
+    private final int mMaxAttempts;
+    private final long mBackoffMillis;
+    private long mMaxBackoffMillis = 30 * 1000;
+    private float mJitter = 0.5f;
+    private int[] mRetryableCodes = DEFAULT_RETRYABLE_CODES;
+    private boolean mRetryPost;
+
+    /**
+     * @param maxAttempts attempts in total, the first one included
+     * @param backoffMillis wait before the first retry
+     */
+    public RetryPolicy(int maxAttempts, long backoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+        }
+        this.mMaxAttempts = maxAttempts;
+        this.mBackoffMillis = backoffMillis;
+    }
+
+    public RetryPolicy setMaxBackoff(long maxBackoffMillis) {
+        this.mMaxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @param jitter share of the backoff added at random, 0 to 1
+     */
+    public RetryPolicy setJitter(float jitter) {
+        this.mJitter = jitter;
+        return this;
+    }
+
+    /** the HTTP status codes worth another attempt */
+    public RetryPolicy setRetryableCodes(int... codes) {
+        this.mRetryableCodes = codes.clone();
+        return this;
+    }
+
+    /** allow retrying POST, only for endpoints that are idempotent */
+    public RetryPolicy setRetryPost(boolean retryPost) {
+        this.mRetryPost = retryPost;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param attempt the attempt that failed, starting with 1
+     * @param method the HTTP method
+     * @param code the response status or {@link #NO_RESPONSE}
+     * @return
+     */
+    public boolean shouldRetry(int attempt, String method, int code) {
+        if (attempt >= mMaxAttempts) {
+            return false;
+        }
+        if ("POST".equals(method) && !mRetryPost) {
+            return false;
+        }
+        if (code == NO_RESPONSE) {
+            return true;
+        }
+        for (int retryable : mRetryableCodes) {
+            if (retryable == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt the attempt that failed, starting with 1
+     * @return the wait before the next attempt
+     */
+    public long getDelayMillis(int attempt) {
+        long delay = mBackoffMillis << Math.min(attempt - 1, 30);
+        if (delay < 0 || delay > mMaxBackoffMillis) {
+            delay = mMaxBackoffMillis;
+        }
+        return delay + (long) (delay * mJitter * sRandom.nextFloat());
+    }
+}
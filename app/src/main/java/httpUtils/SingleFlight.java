@@ -0,0 +1,255 @@
+package httpUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * lets identical requests that are in flight at the same time share one
+ * network call. every caller becomes a {@link Member} of a {@link Flight};
+ * the first one runs the flight as the handler of its task, the others
+ * receive the same callbacks.
+ */
+class SingleFlight {
+
+    /** by key and options */
+    private final Map<List<Object>, Flight> mFlights = new HashMap<List<Object>, Flight>();
+    private long mCoalescedCount;
+
+    /**
+     * key of a request: method, url and a hash of the body. a {@link ReaderTaskHandler}
+     * parses while reading, so it only shares a call with handlers of its own class
+     */
+    static String key(String method, String url, String body, TaskHandler handler) {
+        StringBuilder sb = new StringBuilder(method).append(' ').append(url);
+        if (body != null) {
+            sb.append(" #").append(body.hashCode()).append(':').append(body.length());
+        }
+        if (handler instanceof ReaderTaskHandler) {
+            sb.append(' ').append(handler.getClass().getName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param key
+     * @param options how the call is made, e.g. its cache and retry policy. only callers
+     *                with equal options share a call, a policy is equal only to itself
+     * @param handler
+     * @param tag the group of the caller, may be null
+     * @param dispatcher where the caller registered the membership with the tag
+     * @return the membership, if {@link Member#isLeader()} the caller has to
+     * {@link #start} {@link Member#flight}
+     */
+    synchronized Member join(String key, List<?> options, TaskHandler handler, Object tag,
+                             RequestDispatcher dispatcher) {
+        List<Object> id = Arrays.asList(key, options);
+        Flight flight = mFlights.get(id);
+        boolean leader = flight == null;
+        if (leader) {
+            flight = new Flight(id, handler);
+            mFlights.put(id, flight);
+        } else {
+            mCoalescedCount++;
+        }
+        Member member = new Member(flight, handler, tag, dispatcher, leader);
+        flight.mMembers.add(member);
+        return member;
+    }
+
+    /**
+     * give the flight the task running it, under the lock so a member canceling
+     * at the same time either sees the task or leaves the flight empty
+     * @return false if every member canceled already, the task is not to be run
+     */
+    synchronized boolean start(Flight flight, DispatchTask<?> task) {
+        if (flight.mMembers.isEmpty()) {
+            return false;
+        }
+        flight.task = task;
+        return true;
+    }
+
+    /** the result is known, later calls start a new flight */
+    private synchronized List<Member> complete(Flight flight) {
+        if (mFlights.get(flight.mKey) == flight) {
+            mFlights.remove(flight.mKey);
+        }
+        return new ArrayList<Member>(flight.mMembers);
+    }
+
+    private synchronized List<Member> snapshot(Flight flight) {
+        return new ArrayList<Member>(flight.mMembers);
+    }
+
+    /**
+     * @return the task of the flight if the member was the last one, the call is not
+     * needed anymore. null if others are still waiting or the flight did not start yet
+     */
+    private synchronized DispatchTask<?> leave(Member member) {
+        Flight flight = member.flight;
+        flight.mMembers.remove(member);
+        if (!flight.mMembers.isEmpty()) {
+            return null;
+        }
+        if (mFlights.get(flight.mKey) == flight) {
+            mFlights.remove(flight.mKey);
+        }
+        return flight.task;
+    }
+
+    /** calls that joined a flight instead of going to the network */
+    synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /** number of distinct requests in flight */
+    synchronized int getInFlightCount() {
+        return mFlights.size();
+    }
+
+    /** one caller of a shared request */
+    class Member implements RequestHandle {
+
+        final Flight flight;
+        final TaskHandler handler;
+        final Object tag;
+        final RequestDispatcher dispatcher;
+        private final boolean mLeader;
+        private volatile boolean mCanceled;
+
+        private Member(Flight flight, TaskHandler handler, Object tag,
+                       RequestDispatcher dispatcher, boolean leader) {
+            this.flight = flight;
+            this.handler = handler;
+            this.tag = tag;
+            this.dispatcher = dispatcher;
+            this.mLeader = leader;
+        }
+
+        boolean isLeader() {
+            return mLeader;
+        }
+
+        @Override
+        public void cancel() {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            DispatchTask<?> task = leave(this);
+            if (task != null) {
+                task.cancel();
+            }
+            dispatcher.unregister(tag, this);
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mCanceled;
+        }
+    }
+
+    /**
+     * the handler of a shared call, it passes every callback on to the members
+     * that did not cancel. the body is parsed once per handler class
+     */
+    class Flight extends ReaderTaskHandler<Object> {
+
+        private final List<Object> mKey;
+        private final TaskHandler mLeader;
+        private final List<Member> mMembers = new ArrayList<Member>();
+        private List<Member> mDelivered;
+        /** the task running this flight, set by {@link #start} */
+        volatile DispatchTask<?> task;
+
+        private Flight(List<Object> key, TaskHandler leader) {
+            this.mKey = key;
+            this.mLeader = leader;
+        }
+
+        /**
+         * true if the members are of a {@link ReaderTaskHandler} class and the body is
+         * parsed by {@link #parseResult(Reader)}. else the call reads it as a String
+         * for {@link #onSuccess}, within {@link HttpRequest#setMaxMemoryBytes}
+         */
+        boolean parsesWhileReading() {
+            return mLeader instanceof ReaderTaskHandler;
+        }
+
+        @Override
+        public Object parseResult(Reader reader) throws IOException {
+            long start = System.nanoTime();
+            Object value = ((ReaderTaskHandler) mLeader).parseResult(reader);
+            ParseStats.get().recordWorker(System.nanoTime() - start);
+            return value;
+        }
+
+        @Override
+        public void onNetError() {
+            for (Member member : snapshot(this)) {
+                member.handler.onNetError();
+            }
+        }
+
+        @Override
+        public void onError() {
+            for (Member member : snapshot(this)) {
+                member.handler.onError();
+            }
+        }
+
+        @Override
+        public void onFail() {
+            mDelivered = complete(this);
+            for (Member member : mDelivered) {
+                if (!member.isCanceled()) {
+                    member.handler.onFail();
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSuccess(Object result) {
+            mDelivered = complete(this);
+            if (parsesWhileReading()) {
+                for (Member member : mDelivered) {
+                    if (!member.isCanceled()) {
+                        member.handler.onSuccess(result);
+                    }
+                }
+                return;
+            }
+            Map<Class<?>, Object> parsed = new HashMap<Class<?>, Object>();
+            for (Member member : mDelivered) {
+                if (member.isCanceled()) {
+                    continue;
+                }
+                TaskHandler handler = member.handler;
+                Class<?> type = handler.getClass();
+                if (!parsed.containsKey(type)) {
+                    long start = System.nanoTime();
+                    parsed.put(type, handler.parseResult((String) result));
+                    ParseStats.get().recordMainThread(System.nanoTime() - start);
+                }
+                handler.onSuccess(parsed.get(type));
+            }
+        }
+
+        @Override
+        public void onFinish() {
+            List<Member> members = mDelivered != null ? mDelivered : complete(this);
+            for (Member member : members) {
+                if (!member.isCanceled()) {
+                    member.handler.onFinish();
+                }
+                member.dispatcher.unregister(member.tag, member);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package httpUtils;
+
+import java.io.IOException;
+
+/**
+ * a {@link TaskHandler} for bodies that may not fit in memory: a body larger than
+ * {@link HttpRequest#setMaxMemoryBytes(long)} is written to a temp file instead of
+ * failing. {@link #parseResult(BodySource)} is called on the worker thread, the
+ * temp file is deleted after it returned
+ */
+public abstract class SourceTaskHandler<T> extends TaskHandler<T> {
+
+	/**
+	 * parse the body, from memory or from its temp file
+	 *
+	 * @param source
+	 */
+	public abstract T parseResult(BodySource source) throws IOException;
+
+	@Override
+	public T parseResult(String result) {
+		try {
+			return parseResult(new BodySource(result.getBytes(IOUtils.UTF_8)));
+		} catch (IOException e) {
+			// a body in memory does not throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -1,30 +1,24 @@
 package httpUtils;
 
 /**
+ * a {@link TaskHandler} that gets the response body as bytes,
+ * {@link #parseResult(byte[])} is called on the main thread. requests with it
+ * are not shared with String handlers by {@link SingleFlight}, a batch reads
+ * its body as bytes too
  */
-public abstract class TaskByteHandler<T> {
-	
-	/** finish */
-	public abstract void onFinish();
-	
-	/** network is break */
-	public abstract void onNetError();
-
-	/**
-	 * have a successful response
-	 * 
-	 * @param result
-	 */
-	public abstract void onSuccess(T result);
-
-	/** if the timeout,server error */
-	public abstract void onFail();
+public abstract class TaskByteHandler<T> extends TaskHandler<T> {
 
 	/**
 	 * parse the InputStream,must be override this
 	 * 
 	 * @param result
 	 */
-	public abstract byte[] parseResult(byte[] result);
+	public abstract T parseResult(byte[] result);
+
+	/** httpUtils always reads the body as bytes, a String is parsed as its UTF-8 bytes */
+	@Override
+	public final T parseResult(String result) {
+		return parseResult(result.getBytes(IOUtils.UTF_8));
+	}
 	
 }
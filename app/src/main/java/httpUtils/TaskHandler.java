@@ -9,14 +9,19 @@ package httpUtils;
  */
 public abstract class TaskHandler<T> {
 
-    /** finish */
+    /**
+     * finish. 用{@link HttpRequest#setResultTtl}缓存结果的请求，先用缓存的结果回调
+     * {@link #onSuccess}和本方法，后台刷新得到不同的结果时会再回调一次，即本方法可能被调用两次
+     */
     public abstract void onFinish();
 
     /** network is break */
     public abstract void onNetError();
 
     /**
-     * have a successful response
+     * have a successful response.
+     * 合并的GET请求（见{@link HttpAsyncTaskManager#request(String, TaskHandler)}）和
+     * {@link HttpRequest#setResultTtl}缓存的结果，同类的handler收到的是同一个对象，不要修改它
      * @param result
      */
     public abstract void onSuccess(T result);
@@ -36,4 +41,12 @@ public abstract class TaskHandler<T> {
     public void onError(){
 
     }
+
+    /**
+     * 请求未能发出，已存入{@link OfflineWriteQueue}，联网后自动重发，结果见其Listener。
+     * 只有{@link HttpRequest#setDeferrable}的请求会回调，之后仍会回调{@link #onFinish()}。
+     */
+    public void onDeferred(){
+
+    }
 }
\ No newline at end of file
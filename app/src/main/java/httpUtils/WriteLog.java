@@ -0,0 +1,311 @@
+package httpUtils;
+
+import com.squareup.okhttp.Headers;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.RequestBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the file of {@link OfflineWriteQueue}: a log of added and sent writes, rewritten
+ * without the dead records when they are more than half of it. not thread safe,
+ * the queue holds its lock
+ */
+final class WriteLog {
+
+    private static final int MAGIC = 0x48575131;
+    private static final byte ADD = 1;
+    private static final byte DONE = 2;
+    /** a log smaller than this is not worth compacting */
+    static final long MIN_COMPACT_BYTES = 16 * 1024;
+
+    private final File mFile;
+    /** the queued writes by idempotency key, in the order they are sent */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+    private long mNextSeq;
+    private long mLogBytes;
+    private long mLiveBytes;
+
+    WriteLog(File file) {
+        this.mFile = file;
+    }
+
+    /**
+     * read the log, a record cut short by the death of the process is dropped
+     * and the log rewritten without it
+     * @return the bytes dropped from its end
+     * @throws IOException if it is not a log or can't be read, it is deleted
+     */
+    long load() throws IOException {
+        if (!mFile.exists()) {
+            return 0;
+        }
+        byte[] log;
+        try {
+            log = read(mFile);
+            if (log.length < 4 || new DataInputStream(new ByteArrayInputStream(log)).readInt() != MAGIC) {
+                throw new IOException("not a queue log");
+            }
+        } catch (IOException e) {
+            mFile.delete();
+            throw e;
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(log, 4, log.length - 4));
+        Map<Long, String> keys = new LinkedHashMap<Long, String>();
+        boolean dirty = false;
+        int good = 4;
+        try {
+            while (good < log.length) {
+                byte type = data.readByte();
+                if (type == ADD) {
+                    Entry entry = readEntry(data);
+                    entry.recordBytes = log.length - data.available() - good;
+                    Entry old = mEntries.remove(entry.key);
+                    if (old != null) {
+                        keys.remove(old.seq);
+                        dirty = true;
+                    }
+                    mEntries.put(entry.key, entry);
+                    keys.put(entry.seq, entry.key);
+                    mNextSeq = Math.max(mNextSeq, entry.seq + 1);
+                } else if (type == DONE) {
+                    String key = keys.remove(data.readLong());
+                    if (key != null) {
+                        mEntries.remove(key);
+                    }
+                    dirty = true;
+                } else {
+                    throw new EOFException("bad record " + type);
+                }
+                good = log.length - data.available();
+            }
+        } catch (EOFException e) {
+            dirty = true;
+        }
+        mLogBytes = good;
+        mLiveBytes = 0;
+        for (Entry entry : mEntries.values()) {
+            mLiveBytes += entry.recordBytes;
+        }
+        if (dirty) {
+            compact();
+        }
+        return log.length - good;
+    }
+
+    /**
+     * append the entry, replacing a queued one with its idempotency key
+     * @param entry
+     * @param maxBytes
+     * @return false if the queued writes would be larger than maxBytes
+     * @throws IOException
+     */
+    boolean add(Entry entry, long maxBytes) throws IOException {
+        entry.seq = mNextSeq++;
+        byte[] record = addRecord(entry);
+        Entry old = mEntries.get(entry.key);
+        long live = mLiveBytes + record.length - (old != null ? old.recordBytes : 0);
+        if (live > maxBytes) {
+            return false;
+        }
+        append(record);
+        entry.recordBytes = record.length;
+        if (old != null) {
+            // superseded, the new one goes where a later write belongs: last
+            mEntries.remove(entry.key);
+        }
+        mEntries.put(entry.key, entry);
+        mLiveBytes = live;
+        compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * the entry was sent or is given up, it is not queued any more even if this throws
+     * @param entry
+     * @throws IOException if the log could not be written, it is sent again after a restart
+     */
+    void done(Entry entry) throws IOException {
+        if (mEntries.get(entry.key) == entry) {
+            mEntries.remove(entry.key);
+            mLiveBytes -= entry.recordBytes;
+        }
+        append(doneRecord(entry.seq));
+        compactIfNeeded();
+    }
+
+    Entry get(String key) {
+        return mEntries.get(key);
+    }
+
+    /** the next write to send, or null */
+    Entry first() {
+        return mEntries.isEmpty() ? null : mEntries.values().iterator().next();
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /** the idempotency keys of the queued writes, in the order they will be sent */
+    List<String> keys() {
+        return new ArrayList<String>(mEntries.keySet());
+    }
+
+    /** size of the log on disk */
+    long getLogBytes() {
+        return mLogBytes;
+    }
+
+    /** size of the records of the queued writes */
+    long getLiveBytes() {
+        return mLiveBytes;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (mLogBytes > MIN_COMPACT_BYTES && mLogBytes > 2 * mLiveBytes) {
+            compact();
+        }
+    }
+
+    /** write the live records to a new log and put it in place of the old one */
+    private void compact() throws IOException {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        long bytes = 4;
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            for (Entry entry : mEntries.values()) {
+                byte[] record = addRecord(entry);
+                data.write(record);
+                bytes += record.length;
+            }
+            data.flush();
+            out.getFD().sync();
+        } finally {
+            IOUtils.closeStream(out);
+        }
+        if (!tmp.renameTo(mFile)) {
+            throw new IOException("can not rename " + tmp);
+        }
+        mLogBytes = bytes;
+    }
+
+    private void append(byte[] record) throws IOException {
+        boolean header = !mFile.exists() || mLogBytes == 0;
+        FileOutputStream out = new FileOutputStream(mFile, !header);
+        try {
+            if (header) {
+                new DataOutputStream(out).writeInt(MAGIC);
+                mLogBytes = 4;
+            }
+            out.write(record);
+            out.getFD().sync();
+            mLogBytes += record.length;
+        } finally {
+            IOUtils.closeStream(out);
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            IOUtils.closeStream(in);
+        }
+        return bytes;
+    }
+
+    private static byte[] addRecord(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.body.length);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(ADD);
+        data.writeLong(entry.seq);
+        data.writeUTF(entry.key);
+        data.writeUTF(entry.method);
+        data.writeUTF(entry.url);
+        data.writeUTF(entry.contentType);
+        data.writeInt(entry.headers.size());
+        for (int i = 0; i < entry.headers.size(); i++) {
+            data.writeUTF(entry.headers.name(i));
+            data.writeUTF(entry.headers.value(i));
+        }
+        data.writeInt(entry.body.length);
+        data.write(entry.body);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] doneRecord(long seq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(DONE);
+        data.writeLong(seq);
+        return bytes.toByteArray();
+    }
+
+    private static Entry readEntry(DataInputStream data) throws IOException {
+        Entry entry = new Entry();
+        entry.seq = data.readLong();
+        entry.key = data.readUTF();
+        entry.method = data.readUTF();
+        entry.url = data.readUTF();
+        entry.contentType = data.readUTF();
+        int headerCount = data.readInt();
+        Headers.Builder headers = new Headers.Builder();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(data.readUTF(), data.readUTF());
+        }
+        entry.headers = headers.build();
+        int length = data.readInt();
+        if (length < 0 || length > data.available()) {
+            throw new EOFException();
+        }
+        entry.body = new byte[length];
+        data.readFully(entry.body);
+        return entry;
+    }
+
+    static class Entry {
+        long seq;
+        String key;
+        String method;
+        String url;
+        String contentType;
+        Headers headers;
+        byte[] body;
+        /** size of its ADD record in the log */
+        int recordBytes;
+
+        Request newRequest() {
+            MediaType type = contentType.length() > 0 ? MediaType.parse(contentType) : null;
+            return new Request.Builder()
+                    .url(url)
+                    .headers(headers)
+                    .method(method, RequestBody.create(type, body))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package httpUtils.benchmark;
+
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import httpUtils.IOUtils;
+import httpUtils.OkHttpUtil;
+
+/**
+ * GET a 10 MB binary into a byte[] like a {@link httpUtils.ByteTaskHandler}: with a
+ * Content-Length it is read straight into the result, chunked into pooled segments
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BinaryResponseBenchmark {
+
+    @Param({MockServer.BINARY, MockServer.BINARY_CHUNKED})
+    public String path;
+
+    private MockServer mServer;
+    private String mUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new MockServer()
+                .serve(MockServer.BINARY, "application/octet-stream",
+                        MockServer.binary(10 * 1024 * 1024), false)
+                .serve(MockServer.BINARY_CHUNKED, "application/octet-stream",
+                        MockServer.binary(10 * 1024 * 1024), true)
+                .start();
+        mUrl = mServer.url(path);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public byte[] bytes() throws IOException {
+        Response response = OkHttpUtil.execute(new Request.Builder().url(mUrl).build());
+        if (!response.isSuccessful()) {
+            throw new IOException("Unexpected code " + response);
+        }
+        ResponseBody body = response.body();
+        return IOUtils.stream2Bytes(body.byteStream(), body.contentLength());
+    }
+}
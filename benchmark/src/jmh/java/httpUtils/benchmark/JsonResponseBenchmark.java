@@ -0,0 +1,93 @@
+package httpUtils.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONReader;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import httpUtils.IOUtils;
+import httpUtils.OkHttpUtil;
+
+/**
+ * GET and parse a JSON list: the body read into a String and parsed on the
+ * main thread like a {@link httpUtils.StringTaskHandler}, or parsed from the
+ * stream like a {@link httpUtils.JsonTaskHandler}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonResponseBenchmark {
+
+    /** small is a list page, large a full sync */
+    @Param({MockServer.SMALL_JSON, MockServer.LARGE_JSON})
+    public String path;
+
+    private MockServer mServer;
+    private String mUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new MockServer()
+                .serve(MockServer.SMALL_JSON, "application/json; charset=utf-8",
+                        MockServer.json(2 * 1024), false)
+                .serve(MockServer.LARGE_JSON, "application/json; charset=utf-8",
+                        MockServer.json(1024 * 1024), false)
+                .start();
+        mUrl = mServer.url(path);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public JSONArray string() throws IOException {
+        ResponseBody body = get().body();
+        String json = IOUtils.stream2String(body.byteStream(), body.contentLength(), charset(body));
+        return JSON.parseArray(json);
+    }
+
+    @Benchmark
+    public JSONArray stream() throws IOException {
+        ResponseBody body = get().body();
+        Reader reader = IOUtils.stream2Reader(body.byteStream(), charset(body));
+        JSONReader jsonReader = new JSONReader(reader);
+        try {
+            return jsonReader.readObject(JSONArray.class);
+        } finally {
+            jsonReader.close();
+        }
+    }
+
+    private Response get() throws IOException {
+        Response response = OkHttpUtil.execute(new Request.Builder().url(mUrl).build());
+        if (!response.isSuccessful()) {
+            throw new IOException("Unexpected code " + response);
+        }
+        return response;
+    }
+
+    private static Charset charset(ResponseBody body) {
+        MediaType contentType = body.contentType();
+        return contentType != null ? contentType.charset(IOUtils.UTF_8) : IOUtils.UTF_8;
+    }
+}
@@ -0,0 +1,90 @@
+package httpUtils.benchmark;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import okio.Buffer;
+
+/**
+ * a MockWebServer that answers every request for a path with the same prepared
+ * response, so a benchmark measures the client and not the building of bodies
+ */
+class MockServer {
+
+    static final String SMALL_JSON = "/small.json";
+    static final String LARGE_JSON = "/large.json";
+    static final String BINARY = "/binary";
+    static final String BINARY_CHUNKED = "/binary-chunked";
+    static final String UPLOAD = "/upload";
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final Map<String, MockResponse> mResponses = new HashMap<String, MockResponse>();
+
+    MockServer() {
+        mServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                MockResponse response = mResponses.get(request.getPath());
+                return response != null ? response : new MockResponse().setResponseCode(404);
+            }
+        });
+        // the server keeps every request it got, not their bodies
+        mServer.setBodyLimit(0);
+    }
+
+    /** serve the body at the path, the response gives out a copy of it each time */
+    MockServer serve(String path, String contentType, Buffer body, boolean chunked) {
+        MockResponse response = new MockResponse().setHeader("Content-Type", contentType);
+        if (chunked) {
+            response.setChunkedBody(body, 16 * 1024);
+        } else {
+            response.setBody(body);
+        }
+        mResponses.put(path, response);
+        return this;
+    }
+
+    MockServer start() throws IOException {
+        mServer.start();
+        return this;
+    }
+
+    String url(String path) {
+        return mServer.url(path).toString();
+    }
+
+    void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /** a JSON array of about size bytes, the same for every run */
+    static Buffer json(int size) {
+        Random random = new Random(size);
+        StringBuilder sb = new StringBuilder(size + 256).append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item ").append(Long.toHexString(random.nextLong()))
+                    .append("\",\"price\":").append(random.nextInt(100000) / 100.0)
+                    .append(",\"tags\":[\"a\",\"b\",\"c\"],\"available\":")
+                    .append(random.nextBoolean()).append('}');
+        }
+        return new Buffer().writeUtf8(sb.append(']').toString());
+    }
+
+    /** size random bytes, the same for every run */
+    static Buffer binary(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return new Buffer().write(bytes);
+    }
+}
@@ -0,0 +1,73 @@
+package httpUtils.benchmark;
+
+import com.squareup.okhttp.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import httpUtils.MultipartUpload;
+import httpUtils.OkHttpUtil;
+import okio.Buffer;
+
+/**
+ * POST a picture with two fields as multipart, the file streamed from disk
+ * like {@link httpUtils.HttpAsyncTaskManager#requestUpload}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MultipartUploadBenchmark {
+
+    private static final MediaType JPEG = MediaType.parse("image/jpeg");
+
+    /** bytes of the file */
+    @Param({"262144", "2097152"})
+    public int size;
+
+    private MockServer mServer;
+    private String mUrl;
+    private File mFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        mServer = new MockServer()
+                .serve(MockServer.UPLOAD, "application/json; charset=utf-8",
+                        new Buffer().writeUtf8("{\"ok\":true}"), false)
+                .start();
+        mUrl = mServer.url(MockServer.UPLOAD);
+        mFile = File.createTempFile("upload", ".jpg");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            MockServer.binary(size).writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public String upload() throws IOException {
+        MultipartUpload upload = new MultipartUpload()
+                .addField("storehouseId", "42")
+                .addField("title", "benchmark")
+                .addFile("image", mFile, JPEG);
+        return OkHttpUtil.postMultipart(mUrl, upload);
+    }
+}
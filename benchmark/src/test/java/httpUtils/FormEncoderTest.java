@@ -0,0 +1,126 @@
+package httpUtils;
+
+import com.squareup.okhttp.RequestBody;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link FormEncoder} and the url helpers of {@link OkHttpUtil} built on it
+ */
+public class FormEncoderTest {
+
+    private static String encode(String s) {
+        StringBuilder sb = new StringBuilder();
+        FormEncoder.encode(sb, s);
+        return sb.toString();
+    }
+
+    private static Map<String, String> params(String... pairs) {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            params.put(pairs[i], pairs[i + 1]);
+        }
+        return params;
+    }
+
+    @Test
+    public void keepsUnreservedAndEncodesTheRest() {
+        assertEquals("azAZ09*-._", encode("azAZ09*-._"));
+        assertEquals("a+b", encode("a b"));
+        assertEquals("%26%3D%3F%2B%25%2F%7E%0A", encode("&=?+%/~\n"));
+    }
+
+    @Test
+    public void encodesNonAsciiAsUtf8() {
+        // two bytes
+        assertEquals("%C3%A9", encode("\u00e9"));
+        // three bytes
+        assertEquals("%E4%B8%AD%E6%96%87", encode("\u4e2d\u6587"));
+        assertEquals("%EF%BF%BF", encode("\uffff"));
+    }
+
+    @Test
+    public void encodesSurrogatePairAsOneCodePoint() {
+        // U+1F600, four bytes
+        assertEquals("%F0%9F%98%80", encode("\ud83d\ude00"));
+        assertEquals("a%F0%9F%98%80b%F0%9F%98%80", encode("a\ud83d\ude00b\ud83d\ude00"));
+        // U+10FFFF, the last code point
+        assertEquals("%F4%8F%BF%BF", encode("\udbff\udfff"));
+    }
+
+    @Test
+    public void encodesLoneSurrogateAsQuestionMark() {
+        assertEquals("%3F", encode("\ud83d"));
+        assertEquals("%3Fa", encode("\ud83da"));
+        assertEquals("a%3F", encode("a\ude00"));
+        // a low surrogate before a high one is no pair
+        assertEquals("%3F%3F", encode("\ude00\ud83d"));
+    }
+
+    @Test
+    public void matchesUrlEncoder() throws IOException {
+        String[] strings = {
+                "plain", "with space", "a+b=c&d", "caf\u00e9", "\u4e2d\u6587 \u00e9",
+                "\ud83d\ude00\ud83d\ude01", "x\u0080\u07ff\u0800\ud7ff\ue000\ufffdy"
+        };
+        for (String s : strings) {
+            assertEquals(s, URLEncoder.encode(s, "UTF-8"), encode(s));
+        }
+    }
+
+    @Test
+    public void formatJoinsWithAmpersand() {
+        assertEquals("", FormEncoder.format(null));
+        assertEquals("", FormEncoder.format(Collections.<String, String>emptyMap()));
+        assertEquals("page=2&q=a+b&flag", FormEncoder.format(params("page", "2", "q", "a b", "flag", null)));
+        assertEquals("k%C3%A9y=%F0%9F%98%80", FormEncoder.format(params("k\u00e9y", "\ud83d\ude00")));
+    }
+
+    @Test
+    public void attachStartsOrExtendsTheQuery() {
+        String url = "http://example.com/items";
+        assertSame(url, FormEncoder.attach(url, null));
+        assertSame(url, FormEncoder.attach(url, Collections.<String, String>emptyMap()));
+        assertEquals(url + "?a=1&b=2", FormEncoder.attach(url, params("a", "1", "b", "2")));
+        assertEquals(url + "?x=0&a=1", FormEncoder.attach(url + "?x=0", params("a", "1")));
+        assertEquals(url + "?a=1", FormEncoder.attach(url + "?", params("a", "1")));
+        assertEquals(url + "?x=0&a=1", FormEncoder.attach(url + "?x=0&", params("a", "1")));
+    }
+
+    @Test
+    public void attachHttpGetParamEncodesAndJoins() {
+        String url = "http://example.com/items";
+        assertEquals(url + "?q=a+b%26c%3Dd", OkHttpUtil.attachHttpGetParam(url, "q", "a b&c=d"));
+        assertEquals(url + "?x=0&q=%E4%B8%AD", OkHttpUtil.attachHttpGetParam(url + "?x=0", "q", "\u4e2d"));
+        assertEquals(url + "?q=1", OkHttpUtil.attachHttpGetParam(url + "?", "q", "1"));
+        assertEquals(url + "?flag", OkHttpUtil.attachHttpGetParam(url, "flag", null));
+    }
+
+    @Test
+    public void attachHttpGetParamsWithMapEncodes() {
+        String url = "http://example.com/items?x=0";
+        assertEquals(url + "&q=%F0%9F%98%80&n=1",
+                OkHttpUtil.attachHttpGetParams(url, params("q", "\ud83d\ude00", "n", "1")));
+    }
+
+    @Test
+    public void bodyIsTheFormAsAscii() throws IOException {
+        RequestBody body = FormEncoder.body(params("name", "caf\u00e9", "note", "a b"));
+        assertEquals(FormEncoder.FORM, body.contentType());
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(body.contentLength(), buffer.size());
+        assertEquals("name=caf%C3%A9&note=a+b", buffer.readUtf8());
+    }
+}
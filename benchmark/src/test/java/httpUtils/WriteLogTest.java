@@ -0,0 +1,232 @@
+package httpUtils;
+
+import com.squareup.okhttp.Headers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * the log of {@link OfflineWriteQueue}: what a new process reads back from it
+ */
+public class WriteLogTest {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("write_queue", ".log");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    private static WriteLog.Entry entry(String key, String body) {
+        WriteLog.Entry entry = new WriteLog.Entry();
+        entry.key = key;
+        entry.method = "POST";
+        entry.url = "http://example.com/items";
+        entry.contentType = "application/json; charset=utf-8";
+        entry.headers = new Headers.Builder()
+                .add(OfflineWriteQueue.IDEMPOTENCY_KEY_HEADER, key)
+                .build();
+        entry.body = body.getBytes(IOUtils.UTF_8);
+        return entry;
+    }
+
+    /** a new process reading the file */
+    private WriteLog reload() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        assertEquals(0, log.load());
+        return log;
+    }
+
+    @Test
+    public void reloadsInOrder() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        assertEquals(0, log.load());
+        assertTrue(log.add(entry("a", "{\"n\":1}"), MAX_BYTES));
+        assertTrue(log.add(entry("b", "{\"n\":2}"), MAX_BYTES));
+        assertEquals(mFile.length(), log.getLogBytes());
+
+        WriteLog reloaded = reload();
+        assertEquals(Arrays.asList("a", "b"), reloaded.keys());
+        WriteLog.Entry a = reloaded.get("a");
+        assertEquals("POST", a.method);
+        assertEquals("http://example.com/items", a.url);
+        assertEquals("application/json; charset=utf-8", a.contentType);
+        assertEquals("a", a.headers.get(OfflineWriteQueue.IDEMPOTENCY_KEY_HEADER));
+        assertArrayEquals("{\"n\":1}".getBytes(IOUtils.UTF_8), a.body);
+        assertEquals(log.getLiveBytes(), reloaded.getLiveBytes());
+    }
+
+    @Test
+    public void doneIsNotReloaded() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        log.add(entry("a", "1"), MAX_BYTES);
+        log.add(entry("b", "2"), MAX_BYTES);
+        log.done(log.first());
+        assertEquals(Arrays.asList("b"), log.keys());
+
+        WriteLog reloaded = new WriteLog(mFile);
+        reloaded.load();
+        assertEquals(Arrays.asList("b"), reloaded.keys());
+        // the DONE record made it dirty, it was rewritten with b alone
+        assertEquals(4 + reloaded.getLiveBytes(), mFile.length());
+    }
+
+    @Test
+    public void supersededKeyIsReplacedAndMovedLast() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        WriteLog.Entry old = entry("a", "old");
+        log.add(old, MAX_BYTES);
+        log.add(entry("b", "2"), MAX_BYTES);
+        log.add(entry("a", "new"), MAX_BYTES);
+        assertEquals(Arrays.asList("b", "a"), log.keys());
+        assertArrayEquals("new".getBytes(IOUtils.UTF_8), log.get("a").body);
+        long live = log.getLiveBytes();
+        // the old one was being sent when it was replaced, the new one is still queued
+        log.done(old);
+        assertEquals(Arrays.asList("b", "a"), log.keys());
+
+        WriteLog reloaded = new WriteLog(mFile);
+        assertEquals(0, reloaded.load());
+        assertEquals(Arrays.asList("b", "a"), reloaded.keys());
+        assertArrayEquals("new".getBytes(IOUtils.UTF_8), reloaded.get("a").body);
+        assertEquals(live, reloaded.getLiveBytes());
+        // the old a was dropped from the file
+        assertEquals(4 + live, mFile.length());
+    }
+
+    @Test
+    public void supersedingCountsOnlyTheNewRecord() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        log.add(entry("a", "12345678"), MAX_BYTES);
+        long max = log.getLiveBytes();
+        assertTrue(log.add(entry("a", "87654321"), max));
+        assertFalse(log.add(entry("b", "1"), max));
+        assertEquals(Arrays.asList("a"), reload().keys());
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        log.add(entry("a", "1"), MAX_BYTES);
+        long whole = log.getLogBytes();
+        log.add(entry("b", "22222222"), MAX_BYTES);
+        long length = mFile.length();
+        // the process died while writing b
+        truncate(length - 3);
+
+        WriteLog reloaded = new WriteLog(mFile);
+        assertEquals(length - 3 - whole, reloaded.load());
+        assertEquals(Arrays.asList("a"), reloaded.keys());
+        assertEquals(whole, mFile.length());
+        assertEquals(whole, reloaded.getLogBytes());
+
+        // it is appended after the good records
+        reloaded.add(entry("c", "3"), MAX_BYTES);
+        assertEquals(Arrays.asList("a", "c"), reload().keys());
+    }
+
+    @Test
+    public void recordCutInItsHeaderIsDropped() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        log.add(entry("a", "1"), MAX_BYTES);
+        long whole = log.getLogBytes();
+        log.add(entry("b", "2"), MAX_BYTES);
+        // the type byte and part of the sequence number
+        truncate(whole + 5);
+
+        WriteLog reloaded = new WriteLog(mFile);
+        assertEquals(5, reloaded.load());
+        assertEquals(Arrays.asList("a"), reloaded.keys());
+        assertEquals(whole, mFile.length());
+    }
+
+    @Test
+    public void notALogIsDeleted() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write("not a log".getBytes(IOUtils.UTF_8));
+        } finally {
+            out.close();
+        }
+        WriteLog log = new WriteLog(mFile);
+        try {
+            log.load();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertFalse(mFile.exists());
+        assertNull(log.first());
+
+        log.add(entry("a", "1"), MAX_BYTES);
+        assertEquals(Arrays.asList("a"), reload().keys());
+    }
+
+    @Test
+    public void compactsWhenMostRecordsAreDead() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        char[] body = new char[1024];
+        Arrays.fill(body, 'x');
+        for (int i = 0; i < 20; i++) {
+            log.add(entry("k" + i, new String(body)), MAX_BYTES);
+        }
+        long full = log.getLogBytes();
+        assertTrue(full > WriteLog.MIN_COMPACT_BYTES);
+        assertEquals(full, mFile.length());
+
+        for (int i = 0; i < 15; i++) {
+            log.done(log.first());
+        }
+        // rewritten with the 10 queued ones when 10 were sent, then 5 DONE records
+        assertEquals(4 + 2 * log.getLiveBytes() + 5 * 9, log.getLogBytes());
+        assertEquals(mFile.length(), log.getLogBytes());
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+
+        WriteLog reloaded = reload();
+        assertEquals(Arrays.asList("k15", "k16", "k17", "k18", "k19"), reloaded.keys());
+        assertEquals(log.getLiveBytes(), reloaded.getLiveBytes());
+    }
+
+    @Test
+    public void smallLogIsNotCompacted() throws IOException {
+        WriteLog log = new WriteLog(mFile);
+        log.add(entry("a", "1"), MAX_BYTES);
+        log.add(entry("b", "2"), MAX_BYTES);
+        long full = log.getLogBytes();
+        log.done(log.first());
+        log.done(log.first());
+        assertEquals(full + 2 * 9, mFile.length());
+        assertEquals(0, log.getLiveBytes());
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(length);
+        } finally {
+            file.close();
+        }
+    }
+}